@@ -1,9 +1,260 @@
 package frc.robot;
 
+import java.util.List;
+
+import edu.wpi.first.apriltag.AprilTagFields;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.math.geometry.Translation3d;
+
+import frc.robot.auto.AutoRoutine;
+import frc.robot.telemetry.PublishGate.Budget;
+import frc.robot.vision.CameraConfig;
+
 public class Constants {
+    public static class DriveTelemetry {
+        /* Lean mode sends modules as one packed topic and skips Mechanism2ds with no dashboard */
+        public static final Telemetry.Mode kMode = Telemetry.Mode.LEAN;
+
+        /* Period of the telemetry consumer thread, also the fastest any topic can publish */
+        public static final double kPublishPeriod = 0.02; // 20 ms
+
+        /* Max rate (Hz) and change threshold for each DriveState topic. The dashboard polls every 60 ms. */
+        public static final Budget kPose = new Budget(50, 0.005); // 5 mm / 5 mrad
+        public static final Budget kSpeeds = new Budget(20, 0.01);
+        public static final Budget kModuleStates = new Budget(20, 0.01);
+        public static final Budget kModuleTargets = new Budget(20, 0.01);
+        public static final Budget kModulePositions = new Budget(10, 0.005);
+        public static final Budget kTimestamp = new Budget(10, 0);
+        public static final Budget kOdometryFrequency = new Budget(4, 1.0); // 1 Hz
+        public static final Budget kMechanisms = new Budget(16, 0.01);
+    }
+
+
+    public static class OdometryHealth {
+        /* Number of odometry periods in the rolling window, about one second at 250 Hz */
+        public static final int kWindowSize = 256;
+        /* How often the main loop re-evaluates health */
+        public static final double kEvaluationPeriod = 0.25; // 250 ms
+
+        /* p99 minus p50 of the odometry period */
+        public static final double kMaxJitter = 0.002; // 2 ms
+        /* Median period compared to the configured odometry period */
+        public static final double kMaxPeriodRatio = 1.25;
+        /* Failed DAQs over all DAQs since the previous evaluation */
+        public static final double kMaxFailureRate = 0.05;
+        /* How long to keep reporting a fault after the last bad evaluation */
+        public static final double kFaultHoldTime = 2.0; // 2 s
+    }
+
+    public static class Field {
+        public static final AprilTagFields kLayout = AprilTagFields.k2025ReefscapeWelded;
+        /* Binary field index in the deploy directory, see FieldIndex */
+        public static final String kIndexFile = "fieldindex.bin";
+        /* Distance from a tag's face to the robot center when scoring on it */
+        public static final double kScoringStandoff = 0.5; // 0.5 m
+        /* Reef tags, red 6-11 and blue 17-22 */
+        public static final int[] kReefTagIds = {6, 7, 8, 9, 10, 11, 17, 18, 19, 20, 21, 22};
+    }
+
+    public static class StateRecorder {
+        /* Full-rate drive state recording onto the roboRIO's USB stick, skipped without one */
+        public static final boolean kEnabled = true;
+        public static final String kUsbMount = "/u";
+        public static final String kDirectory = "state"; // on the stick
+        /* 16 MiB is about four minutes at 250 Hz, the pool of 32 segment files takes 512 MiB of the stick */
+        public static final int kSegmentBytes = 16 * 1024 * 1024;
+        public static final int kMaxSegments = 32;
+        /* About four seconds at 250 Hz to ride out a slow disk */
+        public static final int kRingCapacity = 1024;
+        public static final double kDrainPeriod = 0.02; // 20 ms
+        public static final double kFlushPeriod = 1.0; // 1 s
+    }
+
+    public static class InputLog {
+        /* Record every input and output into the DataLogManager log, for replay. Only on the robot */
+        public static final boolean kEnabled = true;
+    }
+
+    public static class PoseHistory {
+        /* How far back pose lookups can reach, covers camera latency with margin */
+        public static final double kLength = 1.5; // 1.5 s
+    }
+
+    public static class DriveInput {
+        /* Stick fraction ignored around center */
+        public static final double kTranslationDeadband = 0.1;
+        public static final double kRotationDeadband = 0.1;
+        /* 0 is linear, 1 is fully cubic */
+        public static final double kTranslationExpo = 0.4;
+        public static final double kRotationExpo = 0.4;
+        /* Fastest the shaped outputs may change */
+        public static final double kTranslationSlewRate = 8.0; // 8 m/s^2
+        public static final double kRotationSlewRate = 4.0 * Math.PI; // rad/s^2
+    }
+
+    public static class Drive {
+        /* Robot mass with battery and bumpers */
+        public static final double kMass = 60.0; // 60 kg
+        /* Wheel to carpet coefficient of friction */
+        public static final double kWheelCOF = 1.2;
+        /* Kraken X60 torque constant and free speed */
+        public static final double kDriveMotorKt = 0.0194; // N*m/A
+        public static final double kSteerMotorFreeSpeed = 6000.0 / 60.0 * 2.0 * Math.PI; // 6000 rpm in rad/s
+        /* Share of the steer free speed the setpoint generator plans with */
+        public static final double kSteerRateFraction = 0.8;
+        /* Loop period assumed when the setpoint generator starts over */
+        public static final double kNominalPeriod = 0.02; // 20 ms
+    }
+
+    public static class Align {
+        /* Translation profile toward the goal pose */
+        public static final double kTranslationP = 3.0; // (m/s) per m
+        public static final double kMaxSpeed = 2.5; // 2.5 m/s
+        public static final double kMaxAcceleration = 3.0; // 3 m/s^2
+        public static final double kTranslationTolerance = 0.02; // 2 cm
+
+        /* Heading profile toward the goal heading */
+        public static final double kRotationP = 5.0; // (rad/s) per rad
+        public static final double kMaxAngularRate = 1.5 * Math.PI; // 3/4 rotation per second
+        public static final double kMaxAngularAcceleration = 4.0 * Math.PI; // rad/s^2
+        public static final double kRotationTolerance = 0.02; // ~1 degree
+
+        /* Extra distance behind the scoring pose with the throttle all the way up */
+        public static final double kMaxExtraStandoff = 1.0; // 1 m
+    }
+
+    public static class Auto {
+        /* Translation speed limit for generated trajectories, module speed is limited separately */
+        public static final double kMaxSpeed = 3.5; // 3.5 m/s
+        /* Share of the traction and slip-current acceleration limit trajectories plan with,
+           the rest is headroom for the follower correction */
+        public static final double kAccelerationFraction = 0.4;
+        /* Time step of sampled trajectories */
+        public static final double kSampleTime = 0.02; // 20 ms
+        /* Trajectory cache, relative to the deploy directory */
+        public static final String kCacheDirectory = "trajectories";
+
+        /* Follower correction on top of the trajectory feedforward */
+        public static final double kTranslationP = 2.0; // (m/s) per m
+        public static final double kRotationP = 4.0; // (rad/s) per rad
+
+        /* Blue alliance routines, the first one is the default */
+        public static final List<AutoRoutine> kRoutines = List.of(
+            new AutoRoutine("Leave", List.of(
+                new Pose2d(7.6, 6.0, Rotation2d.k180deg),
+                new Pose2d(5.8, 6.0, Rotation2d.k180deg)
+            )),
+            new AutoRoutine("Center Reef", List.of(
+                new Pose2d(7.6, 4.03, Rotation2d.k180deg),
+                new Pose2d(5.82, 4.03, Rotation2d.k180deg)
+            )),
+            new AutoRoutine("Left Reef", List.of(
+                new Pose2d(7.6, 6.0, Rotation2d.k180deg),
+                new Pose2d(6.2, 5.6, Rotation2d.fromDegrees(-150)),
+                new Pose2d(5.15, 5.18, Rotation2d.fromDegrees(-120))
+            ))
+        );
+    }
+
+    public static class Planner {
+        /* Navigation grid resolution */
+        public static final double kCellSize = 0.1; // 10 cm
+        /* Obstacles are grown by this much, half the bumper width */
+        public static final double kRobotRadius = 0.45; // 45 cm
+        /* Reefs as circles through their tag faces, blue then red */
+        public static final double[][] kReefCenters = {{4.49, 4.03}, {13.06, 4.03}};
+        public static final double kReefRadius = 0.83; // 83 cm
+        /* Approximate footprint of the barge and cages along the center line, between its end tags */
+        public static final double kBargeMinX = 8.47;
+        public static final double kBargeMaxX = 9.07;
+        /* Leaves a lane along each side wall so the two halves of the field connect */
+        public static final double kBargeMinY = 1.91;
+        public static final double kBargeMaxY = 6.14;
+
+        /* Memoized plans kept, by start cell and goal */
+        public static final int kCacheSize = 256;
+        /* How far ahead on the path the robot aims */
+        public static final double kLookahead = 0.8; // 80 cm
+        /* Replan when the robot is this far off the path */
+        public static final double kReplanDistance = 0.5; // 50 cm
+    }
+
+    public static class Vision {
+        /* Cameras to run, the first one is used for target alignment */
+        public static final List<CameraConfig> kCameras = List.of(
+            new CameraConfig("OV9281", new Transform3d(new Translation3d(0.5, 0.0, 0.5), new Rotation3d(0, 0, 0)))
+        );
+
+        /* How often the vision thread drains unread camera results */
+        public static final double kPollPeriod = 0.01; // 10 ms
+        /* Results older than this don't count as seeing a target */
+        public static final double kTargetTimeout = 0.25; // 250 ms
+
+        /* Gating, estimates outside these limits are rejected */
+        public static final double kMaxAmbiguity = 0.2; // single-tag only
+        public static final double kMaxTagDistance = 4.0; // 4 m
+        public static final double kFieldMargin = 0.5; // 0.5 m outside the field walls
+        public static final double kMaxHeightError = 0.75; // 0.75 m off the carpet
+        public static final double kMaxOdometryError = 1.0; // 1 m from the pose at the same timestamp
+        public static final double kMaxImpliedSpeed = 6.0; // 6 m/s away from the pose at the same timestamp
+        public static final double kVelocityWindow = 0.5; // 0.5 s, the longest a correction may have been missed
+
+        /* Standard deviations for one tag at 1 m, scaled by distance squared over tag count */
+        public static final double kXyStdDevBase = 0.08; // 8 cm
+        public static final double kThetaStdDevBase = 0.2; // rad
+        public static final double kAmbiguityScale = 5.0;
+        /* Effectively ignore single-tag headings and trust the gyro */
+        public static final double kSingleTagThetaStdDev = 1e6;
+    }
+
+    public static class VisionSim {
+        /* OV9281 at its usual PhotonVision mode */
+        public static final int kResolutionWidth = 1280;
+        public static final int kResolutionHeight = 800;
+        public static final double kDiagonalFov = 80.0; // degrees
+        public static final double kFps = 45.0;
+        public static final double kAverageLatencyMs = 25.0;
+        public static final double kLatencyStdDevMs = 5.0;
+        /* Corner detection noise in pixels */
+        public static final double kCalibrationError = 0.35;
+        public static final double kCalibrationErrorStdDev = 0.10;
+
+        /* Drawing the streams costs the most, leave off for headless runs */
+        public static final boolean kEnableStreams = false;
+        public static final boolean kEnableWireframe = false;
+    }
+
     public static class Led {
         public static final int l_ledID = 0;
+        public static final int kLength = 101;
+        /* Render loop frequency */
+        public static final double kFrameRate = 50.0; // Hz
         
+        /* LED layers, later entries draw over earlier ones */
+        public static enum Layer {
+            BASE,
+            ALERT,
+            VISION,
+            FLASH
+        }
+
+        /* Independently composited stretches of the strip, [start, end) LED indices */
+        public static enum Segment {
+            LEFT(0, 50),
+            RIGHT(50, kLength);
+
+            public final int start;
+            public final int end;
+
+            Segment(int start, int end) {
+                this.start = start;
+                this.end = end;
+            }
+        }
+
         public static enum StatusList {
             DISCONNECT,
             DISABLED,
@@ -15,6 +266,7 @@ public class Constants {
             READY,
             RELEASE,
             UNSAFE,
+            ODOMETRYFAULT,
             BLANK
         }
     }
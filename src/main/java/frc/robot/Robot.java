@@ -8,19 +8,34 @@ import edu.wpi.first.wpilibj.TimedRobot;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.CommandScheduler;
 import frc.robot.Constants.Led;
+import frc.robot.io.InputLog;
+import frc.robot.telemetry.LoopProfiler;
 
 public class Robot extends TimedRobot {
   private Command m_autonomousCommand;
 
   private final RobotContainer m_robotContainer;
 
+  private final LoopProfiler m_profiler = LoopProfiler.getInstance();
+  private final InputLog m_inputLog = InputLog.getInstance();
+  private final int m_inputLogChannel = m_profiler.channel("InputLog");
+
   public Robot() {
     m_robotContainer = new RobotContainer();
+    m_profiler.install(CommandScheduler.getInstance());
+  }
+
+  public RobotContainer getRobotContainer() {
+    return m_robotContainer;
   }
 
   @Override
   public void robotPeriodic() {
-    CommandScheduler.getInstance().run(); 
+    m_profiler.beginCycle();
+    m_inputLog.update();
+    m_profiler.lap(m_inputLogChannel);
+    CommandScheduler.getInstance().run();
+    m_profiler.endCycle();
   }
 
   @Override
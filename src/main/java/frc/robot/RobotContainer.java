@@ -6,108 +6,154 @@ package frc.robot;
 
 import static edu.wpi.first.units.Units.*;
 
-import java.util.Optional;
-
-import org.photonvision.EstimatedRobotPose;
-import org.photonvision.PhotonCamera;
-import org.photonvision.PhotonPoseEstimator;
-import org.photonvision.PhotonPoseEstimator.PoseStrategy;
+import java.io.File;
 
 import com.ctre.phoenix6.swerve.SwerveModule.DriveRequestType;
 import com.ctre.phoenix6.swerve.SwerveRequest;
 
-import edu.wpi.first.apriltag.AprilTagFieldLayout;
-import edu.wpi.first.apriltag.AprilTagFields;
 import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.controller.PIDController;
-import edu.wpi.first.math.geometry.Pose3d;
 import edu.wpi.first.math.geometry.Rotation2d;
-import edu.wpi.first.math.geometry.Rotation3d;
-import edu.wpi.first.math.geometry.Transform3d;
-import edu.wpi.first.math.geometry.Translation3d;
-import edu.wpi.first.networktables.DoublePublisher;
-import edu.wpi.first.networktables.DoubleTopic;
-import edu.wpi.first.networktables.NetworkTable;
-import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.DriverStation.Alliance;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.smartdashboard.SendableChooser;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
 import edu.wpi.first.wpilibj2.command.Commands;
 import edu.wpi.first.wpilibj2.command.button.CommandJoystick;
 import edu.wpi.first.wpilibj2.command.button.CommandXboxController;
 import edu.wpi.first.wpilibj2.command.button.RobotModeTriggers;
 import edu.wpi.first.wpilibj2.command.sysid.SysIdRoutine.Direction;
 import frc.robot.subsystems.Led;
+import frc.robot.auto.AutoRoutine;
+import frc.robot.auto.DriveToReef;
+import frc.robot.auto.FollowTrajectory;
+import frc.robot.auto.NavigationGrid;
+import frc.robot.auto.SampledTrajectory;
+import frc.robot.auto.TrajectoryEngine;
+import frc.robot.control.AlignToPose;
+import frc.robot.control.DriveInput;
+import frc.robot.control.SwerveSetpointGenerator;
+import frc.robot.field.FieldIndex;
 import frc.robot.generated.TunerConstants;
+import frc.robot.io.DriveStateInputs;
+import frc.robot.io.DriverStationInputs;
+import frc.robot.io.InputLog;
+import frc.robot.io.JoystickInputs;
+import frc.robot.sim.VisionSim;
 import frc.robot.subsystems.CommandSwerveDrivetrain;
+import frc.robot.subsystems.Vision;
+import frc.robot.telemetry.LoopProfiler;
+import frc.robot.telemetry.StateRecorder;
+import frc.robot.vision.VisionSnapshot;
 
 public class RobotContainer {
     private double MaxSpeed = TunerConstants.kSpeedAt12Volts.in(MetersPerSecond); // kSpeedAt12Volts desired top speed
     private double MaxAngularRate = RotationsPerSecond.of(0.75).in(RadiansPerSecond); // 3/4 of a rotation per second max angular velocity
 
-    public final PhotonCamera limelight = new PhotonCamera("OV9281");
     private PIDController alignTagPid = new PIDController(0.2,0.0,0.0);
-    private PIDController strafePosePid = new PIDController(5.0, 0.003, 0.0);
-    private PIDController forwPosePid = new PIDController(4.0, 0.003, 0.0);
-    private PIDController rotPosePid = new PIDController(6, 0.003, 0.0);
-    public static final AprilTagFieldLayout kTagLayout = AprilTagFieldLayout.loadField(AprilTagFields.k2025ReefscapeWelded);
-    public static final Transform3d kRobotToCam = new Transform3d(new Translation3d(0.5, 0.0, 0.5), new Rotation3d(0, 0, 0));
-    public PhotonPoseEstimator photonEstimator = new PhotonPoseEstimator(kTagLayout, PoseStrategy.MULTI_TAG_PNP_ON_COPROCESSOR, kRobotToCam);
+    public static final FieldIndex kField = FieldIndex.load();
 
     /* Setting up bindings for necessary control of the swerve drive platform */
     private final SwerveRequest.FieldCentric drive = new SwerveRequest.FieldCentric()
-            .withDeadband(MaxSpeed * 0.1).withRotationalDeadband(MaxAngularRate * 0.1) // Add a 10% deadband
+            .withRotationalDeadband(MaxAngularRate * 0.1) // Add a 10% rotational deadband, DriveInput handles the sticks
             .withDriveRequestType(DriveRequestType.OpenLoopVoltage); // Use open-loop control for drive motors
+    /* Default drive goes through the setpoint generator so it never asks for more than the carpet gives */
+    private final SwerveRequest.ApplyRobotSpeeds driveRobotSpeeds = new SwerveRequest.ApplyRobotSpeeds()
+            .withDriveRequestType(DriveRequestType.OpenLoopVoltage);
+    private final SwerveSetpointGenerator setpointGenerator = new SwerveSetpointGenerator();
     private final SwerveRequest.SwerveDriveBrake brake = new SwerveRequest.SwerveDriveBrake();
     private final SwerveRequest.PointWheelsAt point = new SwerveRequest.PointWheelsAt();
+    /* Runs on the odometry thread, drives onto the scoring pose of alignTag */
+    private final AlignToPose align = new AlignToPose();
+    private int alignTag = -1;
 
-    private final Telemetry logger = new Telemetry(MaxSpeed);
+    private final Telemetry logger = new Telemetry(MaxSpeed, Constants.DriveTelemetry.kMode);
+    /* Full-rate drive state onto the USB stick, only on the robot */
+    private final StateRecorder stateRecorder = RobotBase.isReal() && Constants.StateRecorder.kEnabled
+        ? new StateRecorder(new File(Constants.StateRecorder.kUsbMount), Constants.StateRecorder.kDirectory)
+        : null;
 
     private final CommandJoystick joystick = new CommandJoystick(0);
+    /* Shaped stick values, sampled once per loop before any command runs */
+    private final DriveInput driveInput = new DriveInput(joystick, MaxSpeed, MaxAngularRate);
 
     public final CommandSwerveDrivetrain drivetrain = TunerConstants.createDrivetrain();
 
+    /* Inputs are recorded once per loop, and the drive logic reads them so a log can be replayed through it */
+    private final InputLog inputLog = InputLog.getInstance();
+    private final DriveStateInputs driveState = new DriveStateInputs(drivetrain);
+    private final double[] setpointOutput = new double[3];
+
     private final Led ledIO = new Led();
 
-    // final DoublePublisher rot1;
-    // final DoublePublisher rot2;
-    // final DoublePublisher rot3;
-    // final DoublePublisher rot4;
-    // final DoublePublisher rot5;
-    // final DoublePublisher rot6;
-    // final DoubleTopic rotTopic;
-
-    private final NetworkTableInstance networkTable = NetworkTableInstance.getDefault();
-    private final NetworkTable camTable = networkTable.getTable("Cam");
-    DoublePublisher rot1;
-    DoublePublisher rot2;
-    DoublePublisher rot3;
-    DoublePublisher rot4;
-    DoublePublisher rot5;
-    DoublePublisher rot6;
+    /* Processes every camera on its own thread and feeds the gated estimates to the pose estimator */
+    private final Vision vision = new Vision(Constants.Vision.kCameras, kField, drivetrain);
+    /* Simulated cameras see the field tags from the ground-truth pose of the simulated robot */
+    private final VisionSim visionSim = RobotBase.isSimulation() && !inputLog.isReplay()
+        ? new VisionSim(vision, kField, drivetrain)
+        : null;
 
-    
+    /* Autonomous trajectories are generated or loaded from the cache in the background at boot */
+    private final TrajectoryEngine trajectories = new TrajectoryEngine(Constants.Auto.kRoutines);
+    private final SendableChooser<String> autoChooser = new SendableChooser<>();
+
+    /* Obstacle grid for driving to the reef, built once at boot */
+    private final NavigationGrid navigationGrid = new NavigationGrid(kField);
 
     public RobotContainer() {
+        inputLog.register(new DriverStationInputs());
+        inputLog.register(new JoystickInputs(joystick.getHID().getPort()));
+        inputLog.register(driveState);
+
         configureBindings();
-        rot1 = camTable.getDoubleTopic("rot1").publish();
-        rot2 = camTable.getDoubleTopic("rot2").publish();
-        rot3 = camTable.getDoubleTopic("rot3").publish();
-        rot4 = camTable.getDoubleTopic("rot4").publish();
-        rot5 = camTable.getDoubleTopic("rot5").publish();
-        rot6 = camTable.getDoubleTopic("rot6").publish();
+
+        for (AutoRoutine routine : Constants.Auto.kRoutines) {
+            autoChooser.addOption(routine.name(), routine.name());
+        }
+        autoChooser.setDefaultOption(Constants.Auto.kRoutines.get(0).name(), Constants.Auto.kRoutines.get(0).name());
+        SmartDashboard.putData("Auto Routine", autoChooser);
     }
     
 
     private void configureBindings() {
+        /*
+         * Each trigger binding below is followed by a profiler lap so its poll is timed on its own.
+         * The first lap closes out any subsystem periodic time that wasn't lapped by the subsystem.
+         */
+        final LoopProfiler profiler = LoopProfiler.getInstance();
+        profiler.bindLap("Subsystems/Other");
+
+        driveInput.install(CommandScheduler.getInstance());
+        profiler.bindLap("Input");
+
         // Note that X is defined as forward according to WPILib convention,
         // and Y is defined as to the left according to WPILib convention.
         drivetrain.setDefaultCommand(
             // Drivetrain will execute this command periodically
             drivetrain.applyRequest(() -> {
-                ledIO.setAndApplyStatus(Constants.Led.StatusList.IDLE);
+                ledIO.setStatus(allianceIdleStatus());
+                if (drivetrain.isOdometryHealthy()) {
+                    ledIO.clearLayer(Constants.Led.Layer.ALERT);
+                } else {
+                    ledIO.setLayer(Constants.Led.Layer.ALERT, Constants.Led.StatusList.ODOMETRYFAULT);
+                }
                 
-                return drive.withVelocityX((-joystick.getY() * MaxSpeed)) // Drive forward with negative Y (forward)
-                    .withVelocityY((-joystick.getX() * MaxSpeed)) // Drive left with negative X (left)
-                    .withRotationalRate((-joystick.getZ() * MaxAngularRate)); // Drive counterclockwise with negative X (left)
+                // Field-centric from the operator's perspective, then limited to what the modules can follow
+                final ChassisSpeeds requested = ChassisSpeeds.fromFieldRelativeSpeeds(
+                    driveInput.getVelocityX(), driveInput.getVelocityY(), driveInput.getRotationalRate(),
+                    driveState.getHeading().minus(drivetrain.getOperatorForwardDirection())
+                );
+                final ChassisSpeeds setpoint = setpointGenerator.generate(requested, driveState.getSpeeds(), Timer.getFPGATimestamp());
+                setpointOutput[0] = setpoint.vxMetersPerSecond;
+                setpointOutput[1] = setpoint.vyMetersPerSecond;
+                setpointOutput[2] = setpoint.omegaRadiansPerSecond;
+                inputLog.recordOutput("Drive/Setpoint", setpointOutput);
+                return driveRobotSpeeds.withSpeeds(setpoint);
             })
         );
 
@@ -117,64 +163,61 @@ public class RobotContainer {
         RobotModeTriggers.disabled().whileTrue(
             drivetrain.applyRequest(() -> idle).ignoringDisable(true)
         );
+        profiler.bindLap("Triggers/Disabled");
 
         joystick.button(1).whileTrue(drivetrain.applyRequest(() -> brake));
+        profiler.bindLap("Triggers/Button 1");
 
         joystick.button(3).whileTrue(
             drivetrain.applyRequest(() -> {
-                var result = limelight.getLatestResult();
-            
-                if (result.hasTargets()) {
-                    ledIO.setAndApplyStatus(Constants.Led.StatusList.READY);
-                    // Use the best target’s yaw as the measurement
-                    Transform3d bestCameraToTarget = result.getBestTarget().getBestCameraToTarget();
-                    var best =  result.getBestTarget();
-                    
-                    // forwPosePid
-                    // rotPosePid
-                    // strafePosePid
-                    double forwardTagOffset = bestCameraToTarget.getX() - (joystick.getThrottle() + 1);
-                    double strafeTagOffset = bestCameraToTarget.getY();
-                    Rotation3d rotationTag = bestCameraToTarget.getRotation();
-                    double rotationTagOffset = rotationTag.getQuaternion().getX();
-
-                    rot1.set(bestCameraToTarget.getRotation().getX());
-                    rot2.set(bestCameraToTarget.getRotation().getY());
-                    rot3.set(bestCameraToTarget.getRotation().getZ());
-                    rot4.set(bestCameraToTarget.getRotation().getAngle());
-                    rot5.set(bestCameraToTarget.getRotation().getQuaternion().getW());
-                    rot6.set(bestCameraToTarget.getRotation().getQuaternion().getX());
-
-
-                    // System.out.println("poseAmbiguity=" + best.getPoseAmbiguity());
-                    Transform3d t = best.getBestCameraToTarget(); // try this before alternate
-                    // System.out.println("Transform: " + t);
-
-                    //// System.out.print("Forward: " + forwardTagOffset + " Strafe: " + strafeTagOffset + " Rotation: " + rotationTagOffset + "\n");
-                    
-                    return drive.withVelocityX(-MathUtil.clamp(forwPosePid.calculate(forwardTagOffset, 0), -0.9, 0.9))
-                        .withVelocityY(-MathUtil.clamp(strafePosePid.calculate(strafeTagOffset, 0), -0.9, 0.9))
-                        // .withRotationalRate(MathUtil.clamp(rotPosePid.calculate(rotationTagOffset, 0), -0.4, 0.4)
-                        // .withRotationalRate(-joystick.getZ() * MaxAngularRate
-                        .withRotationalRate(MathUtil.clamp(rotPosePid.calculate(rotationTagOffset, 0), -1.0, 1.0));
-                } else {
-                    ledIO.setAndApplyStatus(Constants.Led.StatusList.UNSAFE);
-                    // no target detected, stop
+                final VisionSnapshot snapshot = vision.getSnapshot();
+
+                // Lock onto a reef tag when the button is pressed: the one we see, or else the closest one
+                if (alignTag < 0) {
+                    alignTag = snapshot.hasTargets() && kField.isReefTag(snapshot.getBestTarget().getFiducialId())
+                        ? snapshot.getBestTarget().getFiducialId()
+                        : kField.nearestTag(driveState.getX(), driveState.getY(), true);
+                }
+                if (alignTag < 0) {
                     return drive.withVelocityX(0)
                                 .withVelocityY(0)
                                 .withRotationalRate(0);
                 }
+
+                // Back off from the scoring pose along the tag normal, throttle sets how far
+                final double standoff = driveInput.getThrottle() * Constants.Align.kMaxExtraStandoff;
+                final double tagYaw = kField.getTagYaw(alignTag);
+                align.setGoal(
+                    kField.getScoringX(alignTag) + standoff * Math.cos(tagYaw),
+                    kField.getScoringY(alignTag) + standoff * Math.sin(tagYaw),
+                    kField.getScoringTheta(alignTag)
+                );
+
+                ledIO.setLayer(
+                    Constants.Led.Layer.VISION,
+                    snapshot.getTarget(alignTag) != null ? Constants.Led.StatusList.READY : Constants.Led.StatusList.UNSAFE
+                );
+                return align;
+            }).finallyDo(() -> {
+                alignTag = -1;
+                align.clearGoal();
+                ledIO.clearLayer(Constants.Led.Layer.VISION);
             })
         );
+        profiler.bindLap("Triggers/Button 3");
+
+        // Drive around the reef and barge to the nearest reef scoring pose
+        joystick.button(4).whileTrue(new DriveToReef(drivetrain, driveState, navigationGrid, kField));
+        profiler.bindLap("Triggers/Button 4");
 
         joystick.button(11).whileTrue(
             drivetrain.applyRequest(() -> {
-                var result = limelight.getLatestResult();
+                final VisionSnapshot snapshot = vision.getSnapshot();
                 
-                if (result.hasTargets()) {
-                    ledIO.setAndApplyStatus(Constants.Led.StatusList.READY);
+                if (snapshot.hasTargets()) {
+                    ledIO.setLayer(Constants.Led.Layer.VISION, Constants.Led.StatusList.READY);
                     // Use the best target’s yaw as the measurement
-                    double yaw = result.getBestTarget().getYaw();
+                    double yaw = snapshot.getBestTarget().getYaw();
                     // System.out.print("Yaw: " + yaw + "\n");
                     return drive.withVelocityX(0)
                                 .withVelocityY(0)
@@ -182,36 +225,38 @@ public class RobotContainer {
                                     MathUtil.clamp(alignTagPid.calculate(yaw, 0), -1.5, 1.5)
                                 );
                 } else {
-                    ledIO.setAndApplyStatus(Constants.Led.StatusList.UNSAFE);
+                    ledIO.setLayer(Constants.Led.Layer.VISION, Constants.Led.StatusList.UNSAFE);
                     // no target detected, stop
                     return drive.withVelocityX(0)
                                 .withVelocityY(0)
                                 .withRotationalRate(0);
                 }
-            })
+            }).finallyDo(() -> ledIO.clearLayer(Constants.Led.Layer.VISION))
         );
+        profiler.bindLap("Triggers/Button 11");
 
         joystick.button(12).whileTrue(
             drivetrain.applyRequest(() -> {
-                var result = limelight.getLatestResult();
-                if (result.hasTargets()) {
-                    ledIO.setAndApplyStatus(Constants.Led.StatusList.READY);
+                final VisionSnapshot snapshot = vision.getSnapshot();
+                if (snapshot.hasTargets()) {
+                    ledIO.setLayer(Constants.Led.Layer.VISION, Constants.Led.StatusList.READY);
                     // Use the best target’s yaw as the rotation force, but allow joystick translation at the same time
-                    double yaw = result.getBestTarget().getYaw();
-                    return drive.withVelocityX(-joystick.getY() * MaxSpeed)
-                                .withVelocityY(-joystick.getX() * MaxSpeed)
+                    double yaw = snapshot.getBestTarget().getYaw();
+                    return drive.withVelocityX(driveInput.getVelocityX())
+                                .withVelocityY(driveInput.getVelocityY())
                                 .withRotationalRate(
                                     MathUtil.clamp(alignTagPid.calculate(yaw, 0), -1.5, 1.5)
                                 );
                 } else {
-                    ledIO.setAndApplyStatus(Constants.Led.StatusList.UNSAFE);
+                    ledIO.setLayer(Constants.Led.Layer.VISION, Constants.Led.StatusList.UNSAFE);
                     // no target detected, stop
-                    return drive.withVelocityX(-joystick.getY() * MaxSpeed)
-                                .withVelocityY(-joystick.getX() * MaxSpeed)
+                    return drive.withVelocityX(driveInput.getVelocityX())
+                                .withVelocityY(driveInput.getVelocityY())
                                 .withRotationalRate(0);
                 }
-            })
+            }).finallyDo(() -> ledIO.clearLayer(Constants.Led.Layer.VISION))
         );
+        profiler.bindLap("Triggers/Button 12");
 
 
 
@@ -228,12 +273,37 @@ public class RobotContainer {
 
         // reset the field-centric heading on left bumper press
         joystick.button(2).onTrue(drivetrain.runOnce(() -> drivetrain.seedFieldCentric()));
+        profiler.bindLap("Triggers/Button 2");
+
+        if (stateRecorder != null) {
+            drivetrain.registerTelemetry(state -> {
+                logger.telemeterize(state);
+                stateRecorder.record(state);
+            });
+        } else {
+            drivetrain.registerTelemetry(logger::telemeterize);
+        }
+    }
+
+    /** @return The idle LED status for our alliance, or plain idle if it isn't known yet */
+    private Constants.Led.StatusList allianceIdleStatus() {
+        return DriverStation.getAlliance()
+            .map(alliance -> alliance == Alliance.Red ? Constants.Led.StatusList.IDLERED : Constants.Led.StatusList.IDLEBLUE)
+            .orElse(Constants.Led.StatusList.IDLE);
+    }
 
-        drivetrain.registerTelemetry(logger::telemeterize);
+    /** @return Whether the background trajectory generation started at boot has finished */
+    public boolean isTrajectoryGenerationDone() {
+        return trajectories.isDone();
     }
 
     public Command getAutonomousCommand() {
-        return Commands.print("No autonomous command configured");
+        final String name = autoChooser.getSelected();
+        final SampledTrajectory trajectory = trajectories.get(name);
+        if (trajectory == null) {
+            return Commands.print("Trajectory " + name + " is not ready");
+        }
+        return new FollowTrajectory(drivetrain, driveState, trajectory, kField, true);
     }
 
     public Command pushLimelightValuesCommand() {
@@ -1,16 +1,25 @@
 package frc.robot;
 
+import java.util.EnumSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import com.ctre.phoenix6.SignalLogger;
+import com.ctre.phoenix6.Utils;
 import com.ctre.phoenix6.swerve.SwerveDrivetrain.SwerveDriveState;
 
 import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
 import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
 import edu.wpi.first.networktables.DoubleArrayPublisher;
 import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.IntegerPublisher;
 import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableEvent;
 import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.PubSubOption;
+import edu.wpi.first.networktables.RawSubscriber;
 import edu.wpi.first.networktables.StringPublisher;
 import edu.wpi.first.networktables.StructArrayPublisher;
 import edu.wpi.first.networktables.StructPublisher;
@@ -20,22 +29,109 @@ import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj.util.Color;
 import edu.wpi.first.wpilibj.util.Color8Bit;
 
+import frc.robot.telemetry.PublishGate;
+import frc.robot.telemetry.SwerveStateRing;
+
+/**
+ * Publishes the swerve drive state to NetworkTables and SignalLogger.
+ * <p>
+ * {@link #telemeterize(SwerveDriveState)} runs on the Phoenix odometry thread, so it only
+ * copies the state into a {@link SwerveStateRing}. A low-priority consumer thread drains the
+ * ring at its own rate, logs every sample to SignalLogger and publishes the newest one.
+ * <p>
+ * Each NetworkTables topic is additionally held to the rate and change budget in
+ * {@link Constants.DriveTelemetry}, so unchanged values are never re-serialized.
+ * SignalLogger always receives the raw odometry-rate stream.
+ */
 public class Telemetry {
+    /* About one second of samples at 250 Hz */
+    private static final int kRingCapacity = 256;
+
     private final double MaxSpeed;
+    private final Mode m_mode;
+    private final long m_publishPeriodMs;
+    /* Bit i is set while module i's Mechanism2d has a subscriber */
+    private final AtomicInteger m_watchedMechanisms = new AtomicInteger();
+    private final RawSubscriber[] m_mechanismSubscribers = new RawSubscriber[4];
+
+    private final SwerveStateRing m_ring = new SwerveStateRing(kRingCapacity);
+    private final Thread m_consumer;
+
+    /** How much of the drive state is published over NetworkTables. */
+    public enum Mode {
+        /** Publish every topic, including the module struct arrays and Mechanism2ds. */
+        FULL,
+        /**
+         * Publish module angles, speeds and targets as one packed topic at odometry rate,
+         * and only rebuild the module Mechanism2ds while a dashboard subscribes to them.
+         */
+        LEAN
+    }
 
     /**
      * Construct a telemetry object, with the specified max speed of the robot
-     * 
+     *
      * @param maxSpeed Maximum speed in meters per second
      */
     public Telemetry(double maxSpeed) {
+        this(maxSpeed, Mode.FULL);
+    }
+
+    /**
+     * Construct a telemetry object, with the specified max speed of the robot
+     * and publishing mode.
+     *
+     * @param maxSpeed Maximum speed in meters per second
+     * @param mode     Which topics to publish
+     */
+    public Telemetry(double maxSpeed, Mode mode) {
+        this(maxSpeed, mode, Constants.DriveTelemetry.kPublishPeriod);
+    }
+
+    /**
+     * Construct a telemetry object, with the specified max speed of the robot,
+     * publishing mode and the period at which the consumer thread publishes.
+     *
+     * @param maxSpeed             Maximum speed in meters per second
+     * @param mode                 Which topics to publish
+     * @param publishPeriodSeconds Period of the consumer thread in seconds
+     */
+    public Telemetry(double maxSpeed, Mode mode, double publishPeriodSeconds) {
         MaxSpeed = maxSpeed;
+        m_mode = mode;
+        m_publishPeriodMs = Math.max(1, Math.round(publishPeriodSeconds * 1000.0));
         SignalLogger.start();
 
         /* Set up the module state Mechanism2d telemetry */
         for (int i = 0; i < 4; ++i) {
             SmartDashboard.putData("Module " + i, m_moduleMechanisms[i]);
         }
+
+        if (m_mode == Mode.LEAN) {
+            /*
+             * The server lists the subscribers of each topic in its $sub$ meta topic. Watch the
+             * list of each mechanism's publish-only dims topic, so clients that never look at the
+             * mechanisms (the coprocessors) don't keep them alive.
+             */
+            for (int i = 0; i < 4; ++i) {
+                final int bit = 1 << i;
+                m_mechanismSubscribers[i] = inst.getRawTopic("$sub$/SmartDashboard/Module " + i + "/dims")
+                    .subscribe("msgpack", new byte[0]);
+                inst.addListener(
+                    m_mechanismSubscribers[i],
+                    EnumSet.of(NetworkTableEvent.Kind.kValueAll, NetworkTableEvent.Kind.kImmediate),
+                    event -> {
+                        final boolean watched = hasSubscribers(event.valueData.value.getRaw());
+                        m_watchedMechanisms.updateAndGet(mask -> watched ? mask | bit : mask & ~bit);
+                    }
+                );
+            }
+        }
+
+        m_consumer = new Thread(this::consumeLoop, "Telemetry");
+        m_consumer.setDaemon(true);
+        m_consumer.setPriority(Thread.MIN_PRIORITY);
+        m_consumer.start();
     }
 
     /* What to publish over networktables for telemetry */
@@ -50,6 +146,16 @@ public class Telemetry {
     private final StructArrayPublisher<SwerveModulePosition> driveModulePositions = driveStateTable.getStructArrayTopic("ModulePositions", SwerveModulePosition.struct).publish();
     private final DoublePublisher driveTimestamp = driveStateTable.getDoubleTopic("Timestamp").publish();
     private final DoublePublisher driveOdometryFrequency = driveStateTable.getDoubleTopic("OdometryFrequency").publish();
+    /* Lean mode: [angle, speed, target angle, target speed] per module, every sample is sent */
+    private final DoubleArrayPublisher driveModulesPacked = driveStateTable.getDoubleArrayTopic("ModulesPacked")
+        .publish(PubSubOption.sendAll(true));
+
+    /* Health of the telemetry pipeline itself */
+    private final NetworkTable telemetryTable = inst.getTable("Telemetry");
+    private final IntegerPublisher ringOverflows = telemetryTable.getIntegerTopic("RingOverflows").publish();
+    private final IntegerPublisher ringDropped = telemetryTable.getIntegerTopic("RingDropped").publish();
+    private final IntegerPublisher ringCoalesced = telemetryTable.getIntegerTopic("RingCoalesced").publish();
+    private final IntegerPublisher ringDepth = telemetryTable.getIntegerTopic("RingDepth").publish();
 
     /* Robot pose for field positioning */
     private final NetworkTable table = inst.getTable("Pose");
@@ -82,46 +188,176 @@ public class Telemetry {
             .append(new MechanismLigament2d("Direction", 0.1, 0, 0, new Color8Bit(Color.kWhite))),
     };
 
+    /* Per-topic publish budgets */
+    private final PublishGate m_poseGate = new PublishGate(Constants.DriveTelemetry.kPose, 3);
+    private final PublishGate m_speedsGate = new PublishGate(Constants.DriveTelemetry.kSpeeds, 3);
+    private final PublishGate m_moduleStatesGate = new PublishGate(Constants.DriveTelemetry.kModuleStates, 8);
+    private final PublishGate m_moduleTargetsGate = new PublishGate(Constants.DriveTelemetry.kModuleTargets, 8);
+    private final PublishGate m_modulePositionsGate = new PublishGate(Constants.DriveTelemetry.kModulePositions, 8);
+    private final PublishGate m_timestampGate = new PublishGate(Constants.DriveTelemetry.kTimestamp, 1);
+    private final PublishGate m_odometryFrequencyGate = new PublishGate(Constants.DriveTelemetry.kOdometryFrequency, 1);
+    private final PublishGate m_mechanismsGate = new PublishGate(Constants.DriveTelemetry.kMechanisms, 8);
+
+    /* Consumer-thread scratch space, only touched by the consumer thread */
+    private final double[] m_sample = new double[SwerveStateRing.kSlotSize];
     private final double[] m_poseArray = new double[3];
     private final double[] m_moduleStatesArray = new double[8];
     private final double[] m_moduleTargetsArray = new double[8];
+    private final double[] m_modulesPacked = new double[16];
+    private final SwerveModuleState[] m_moduleStates = new SwerveModuleState[] {
+        new SwerveModuleState(), new SwerveModuleState(), new SwerveModuleState(), new SwerveModuleState()
+    };
+    private final SwerveModuleState[] m_moduleTargets = new SwerveModuleState[] {
+        new SwerveModuleState(), new SwerveModuleState(), new SwerveModuleState(), new SwerveModuleState()
+    };
+    private final SwerveModulePosition[] m_modulePositions = new SwerveModulePosition[] {
+        new SwerveModulePosition(), new SwerveModulePosition(), new SwerveModulePosition(), new SwerveModulePosition()
+    };
+    private long m_coalesced = 0;
 
-    /** Accept the swerve drive state and telemeterize it to SmartDashboard and SignalLogger. */
+    /**
+     * Accept the swerve drive state from the odometry thread. This only copies the
+     * state into the telemetry ring; publishing happens on the consumer thread.
+     */
     public void telemeterize(SwerveDriveState state) {
-        /* Telemeterize the swerve drive state */
-        drivePose.set(state.Pose);
-        driveSpeeds.set(state.Speeds);
-        driveModuleStates.set(state.ModuleStates);
-        driveModuleTargets.set(state.ModuleTargets);
-        driveModulePositions.set(state.ModulePositions);
-        driveTimestamp.set(state.Timestamp);
-        driveOdometryFrequency.set(1.0 / state.OdometryPeriod);
-
-        /* Also write to log file */
-        m_poseArray[0] = state.Pose.getX();
-        m_poseArray[1] = state.Pose.getY();
-        m_poseArray[2] = state.Pose.getRotation().getDegrees();
-        for (int i = 0; i < 4; ++i) {
-            m_moduleStatesArray[i*2 + 0] = state.ModuleStates[i].angle.getRadians();
-            m_moduleStatesArray[i*2 + 1] = state.ModuleStates[i].speedMetersPerSecond;
-            m_moduleTargetsArray[i*2 + 0] = state.ModuleTargets[i].angle.getRadians();
-            m_moduleTargetsArray[i*2 + 1] = state.ModuleTargets[i].speedMetersPerSecond;
+        m_ring.offer(state);
+    }
+
+    private void consumeLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            drain();
+            try {
+                Thread.sleep(m_publishPeriodMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** Log every queued sample, then publish only the newest one. */
+    private void drain() {
+        int drained = 0;
+        while (m_ring.poll(m_sample)) {
+            logSample(m_sample);
+            if (m_mode == Mode.LEAN) {
+                publishPacked(m_sample);
+            }
+            ++drained;
         }
 
-        SignalLogger.writeDoubleArray("DriveState/Pose", m_poseArray);
-        SignalLogger.writeDoubleArray("DriveState/ModuleStates", m_moduleStatesArray);
-        SignalLogger.writeDoubleArray("DriveState/ModuleTargets", m_moduleTargetsArray);
-        SignalLogger.writeDouble("DriveState/OdometryPeriod", state.OdometryPeriod, "seconds");
+        if (drained > 0) {
+            m_coalesced += drained - 1;
+            publishSample(m_sample);
+        }
+
+        ringOverflows.set(m_ring.getOverflowCount());
+        ringDropped.set(m_ring.getDroppedCount());
+        ringCoalesced.set(m_coalesced);
+        ringDepth.set(m_ring.size());
+    }
+
+    /** Write the full-rate stream to the log file, stamped with the sample's own time. */
+    private void logSample(double[] sample) {
+        final double latency = Utils.getCurrentTimeSeconds() - sample[SwerveStateRing.kTimestamp];
+
+        m_poseArray[0] = sample[SwerveStateRing.kPoseX];
+        m_poseArray[1] = sample[SwerveStateRing.kPoseY];
+        m_poseArray[2] = Math.toDegrees(sample[SwerveStateRing.kPoseRotation]);
+        System.arraycopy(sample, SwerveStateRing.kModuleStates, m_moduleStatesArray, 0, 8);
+        System.arraycopy(sample, SwerveStateRing.kModuleTargets, m_moduleTargetsArray, 0, 8);
+
+        SignalLogger.writeDoubleArray("DriveState/Pose", m_poseArray, "", latency);
+        SignalLogger.writeDoubleArray("DriveState/ModuleStates", m_moduleStatesArray, "", latency);
+        SignalLogger.writeDoubleArray("DriveState/ModuleTargets", m_moduleTargetsArray, "", latency);
+        SignalLogger.writeDouble("DriveState/OdometryPeriod", sample[SwerveStateRing.kOdometryPeriod], "seconds", latency);
+    }
+
+    /** Publish the topics of a sample whose budget allows it. */
+    private void publishSample(double[] sample) {
+        final double now = sample[SwerveStateRing.kTimestamp];
+
+        /* Telemeterize the swerve drive state */
+        if (m_poseGate.tryPass(now, sample, SwerveStateRing.kPoseX)) {
+            drivePose.set(new Pose2d(
+                sample[SwerveStateRing.kPoseX],
+                sample[SwerveStateRing.kPoseY],
+                new Rotation2d(sample[SwerveStateRing.kPoseRotation])
+            ));
+
+            /* Telemeterize the pose to a Field2d, m_poseArray still holds the newest sample */
+            fieldTypePub.set("Field2d");
+            fieldPub.set(m_poseArray);
+        }
+        if (m_speedsGate.tryPass(now, sample, SwerveStateRing.kSpeedsVx)) {
+            driveSpeeds.set(new ChassisSpeeds(
+                sample[SwerveStateRing.kSpeedsVx],
+                sample[SwerveStateRing.kSpeedsVy],
+                sample[SwerveStateRing.kSpeedsOmega]
+            ));
+        }
+        if (m_mode == Mode.FULL) {
+            if (m_moduleStatesGate.tryPass(now, sample, SwerveStateRing.kModuleStates)) {
+                unpackModuleStates(sample, SwerveStateRing.kModuleStates, m_moduleStates);
+                driveModuleStates.set(m_moduleStates);
+            }
+            if (m_moduleTargetsGate.tryPass(now, sample, SwerveStateRing.kModuleTargets)) {
+                unpackModuleStates(sample, SwerveStateRing.kModuleTargets, m_moduleTargets);
+                driveModuleTargets.set(m_moduleTargets);
+            }
+        }
+        if (m_modulePositionsGate.tryPass(now, sample, SwerveStateRing.kModulePositions)) {
+            for (int i = 0; i < 4; ++i) {
+                m_modulePositions[i].angle = new Rotation2d(sample[SwerveStateRing.kModulePositions + i*2 + 0]);
+                m_modulePositions[i].distanceMeters = sample[SwerveStateRing.kModulePositions + i*2 + 1];
+            }
+            driveModulePositions.set(m_modulePositions);
+        }
+        if (m_timestampGate.tryPass(now, now)) {
+            driveTimestamp.set(now);
+        }
+        final double odometryFrequency = 1.0 / sample[SwerveStateRing.kOdometryPeriod];
+        if (m_odometryFrequencyGate.tryPass(now, odometryFrequency)) {
+            driveOdometryFrequency.set(odometryFrequency);
+        }
 
-        /* Telemeterize the pose to a Field2d */
-        fieldTypePub.set("Field2d");
-        fieldPub.set(m_poseArray);
+        /* Telemeterize each module state to a Mechanism2d, in lean mode only those a dashboard subscribes to */
+        final int watched = m_mode == Mode.FULL ? 0xF : m_watchedMechanisms.get();
+        if (watched != 0 && m_mechanismsGate.tryPass(now, sample, SwerveStateRing.kModuleStates)) {
+            for (int i = 0; i < 4; ++i) {
+                if ((watched & (1 << i)) == 0) {
+                    continue;
+                }
+                final double angle = Math.toDegrees(sample[SwerveStateRing.kModuleStates + i*2 + 0]);
+                final double speed = sample[SwerveStateRing.kModuleStates + i*2 + 1];
+                m_moduleSpeeds[i].setAngle(angle);
+                m_moduleDirections[i].setAngle(angle);
+                m_moduleSpeeds[i].setLength(speed / (2 * MaxSpeed));
+            }
+        }
+    }
 
-        /* Telemeterize each module state to a Mechanism2d */
+    /** Publish the module angles, speeds and targets of one sample as a single packed array. */
+    private void publishPacked(double[] sample) {
         for (int i = 0; i < 4; ++i) {
-            m_moduleSpeeds[i].setAngle(state.ModuleStates[i].angle);
-            m_moduleDirections[i].setAngle(state.ModuleStates[i].angle);
-            m_moduleSpeeds[i].setLength(state.ModuleStates[i].speedMetersPerSecond / (2 * MaxSpeed));
+            m_modulesPacked[i*4 + 0] = sample[SwerveStateRing.kModuleStates + i*2 + 0];
+            m_modulesPacked[i*4 + 1] = sample[SwerveStateRing.kModuleStates + i*2 + 1];
+            m_modulesPacked[i*4 + 2] = sample[SwerveStateRing.kModuleTargets + i*2 + 0];
+            m_modulesPacked[i*4 + 3] = sample[SwerveStateRing.kModuleTargets + i*2 + 1];
+        }
+        /* Stamp with the odometry time, in the FPGA timebase NT uses, so subscribers can reconstruct the full-rate stream */
+        driveModulesPacked.set(m_modulesPacked, (long) (Utils.currentTimeToFPGATime(sample[SwerveStateRing.kTimestamp]) * 1e6));
+    }
+
+    /** @return Whether a msgpack subscriber list from a $sub$ meta topic is non-empty */
+    private static boolean hasSubscribers(byte[] subscribers) {
+        /* An empty list is the single fixarray byte 0x90 */
+        return subscribers.length > 1 || (subscribers.length == 1 && (subscribers[0] & 0xff) != 0x90);
+    }
+
+    private static void unpackModuleStates(double[] sample, int offset, SwerveModuleState[] states) {
+        for (int i = 0; i < states.length; ++i) {
+            states[i].angle = new Rotation2d(sample[offset + i*2 + 0]);
+            states[i].speedMetersPerSecond = sample[offset + i*2 + 1];
         }
     }
 }
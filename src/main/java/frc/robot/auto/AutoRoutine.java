@@ -0,0 +1,17 @@
+package frc.robot.auto;
+
+import java.util.List;
+
+import edu.wpi.first.math.geometry.Pose2d;
+
+/**
+ * An autonomous path, as the robot poses it has to pass through.
+ * <p>
+ * Positions are on the blue alliance side of the field with the blue origin, the rotation of
+ * each waypoint is the robot's heading there, not the direction of travel. The follower mirrors
+ * the path for the red alliance.
+ *
+ * @param name      Unique name, also used for the cache file
+ * @param waypoints Poses to pass through, at least two
+ */
+public record AutoRoutine(String name, List<Pose2d> waypoints) {}
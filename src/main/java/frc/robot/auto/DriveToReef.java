@@ -0,0 +1,102 @@
+package frc.robot.auto;
+
+import edu.wpi.first.wpilibj2.command.Command;
+
+import frc.robot.Constants;
+import frc.robot.control.AlignToPose;
+import frc.robot.field.FieldIndex;
+import frc.robot.io.DriveStateInputs;
+import frc.robot.subsystems.CommandSwerveDrivetrain;
+
+/**
+ * Drives around the field obstacles to the scoring pose of the nearest reef tag.
+ * <p>
+ * The path comes from a {@link NavigationGrid}. Every loop the command chases a point a
+ * fixed distance ahead on the path with an {@link AlignToPose} request, and hands over to the
+ * scoring pose itself once it is within that distance. If the robot drifts too far from the
+ * path, for example after being pushed, it rejoins the path in a straight line where it can,
+ * and only plans again from where it is when no part of the path is in sight. A goal that
+ * can't be reached is driven at in a straight line, without searching again until the
+ * command restarts.
+ */
+public class DriveToReef extends Command {
+    private final CommandSwerveDrivetrain m_drivetrain;
+    private final DriveStateInputs m_driveState;
+    private final NavigationGrid m_grid;
+    private final FieldIndex m_field;
+    private final AlignToPose m_align = new AlignToPose();
+    private final double[] m_lookahead = new double[3];
+
+    private int m_goalTag = -1;
+    private NavigationGrid.Plan m_plan = null;
+    /* Set once the goal tag turned out unreachable, so the search isn't repeated every loop */
+    private boolean m_unreachable = false;
+
+    /**
+     * Constructs the command.
+     *
+     * @param drivetrain The drivetrain to drive
+     * @param driveState Drive state read by the main loop
+     * @param grid       Planner for the field
+     * @param field      Field index to take the reef tags and scoring poses from
+     */
+    public DriveToReef(CommandSwerveDrivetrain drivetrain, DriveStateInputs driveState, NavigationGrid grid, FieldIndex field) {
+        m_drivetrain = drivetrain;
+        m_driveState = driveState;
+        m_grid = grid;
+        m_field = field;
+        addRequirements(drivetrain);
+    }
+
+    @Override
+    public void initialize() {
+        m_goalTag = m_field.nearestTag(m_driveState.getX(), m_driveState.getY(), true);
+        m_plan = null;
+        m_unreachable = false;
+    }
+
+    @Override
+    public void execute() {
+        if (m_goalTag < 0) {
+            return;
+        }
+        final double x = m_driveState.getX();
+        final double y = m_driveState.getY();
+        final double goalX = m_field.getScoringX(m_goalTag);
+        final double goalY = m_field.getScoringY(m_goalTag);
+        final double goalTheta = m_field.getScoringTheta(m_goalTag);
+
+        if (m_plan != null && m_plan.distanceTo(x, y) > Constants.Planner.kReplanDistance) {
+            m_plan = m_grid.rejoin(m_plan, x, y);
+        }
+        if (m_plan == null && !m_unreachable) {
+            m_plan = m_grid.plan(x, y, goalX, goalY, m_goalTag);
+            m_unreachable = m_plan == null;
+        }
+
+        if (m_plan == null) {
+            /* Unreachable, drive straight at it rather than sit still */
+            m_align.setGoal(goalX, goalY, goalTheta);
+        } else {
+            m_plan.lookahead(x, y, Constants.Planner.kLookahead, m_lookahead);
+            if (m_lookahead[2] <= 0.0) {
+                m_align.setGoal(goalX, goalY, goalTheta);
+            } else {
+                m_align.setGoal(m_lookahead[0], m_lookahead[1], goalTheta);
+            }
+        }
+        m_drivetrain.setControl(m_align);
+    }
+
+    @Override
+    public boolean isFinished() {
+        return m_goalTag < 0 || m_align.isAtGoal();
+    }
+
+    @Override
+    public void end(boolean interrupted) {
+        m_align.clearGoal();
+        m_drivetrain.setControl(m_align);
+        m_plan = null;
+    }
+}
@@ -0,0 +1,129 @@
+package frc.robot.auto;
+
+import com.ctre.phoenix6.swerve.SwerveModule.DriveRequestType;
+import com.ctre.phoenix6.swerve.SwerveRequest;
+import com.ctre.phoenix6.swerve.SwerveRequest.ForwardPerspectiveValue;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.DriverStation.Alliance;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.Command;
+
+import frc.robot.Constants;
+import frc.robot.field.FieldIndex;
+import frc.robot.io.DriveStateInputs;
+import frc.robot.io.InputLog;
+import frc.robot.subsystems.CommandSwerveDrivetrain;
+
+/**
+ * Drives a {@link SampledTrajectory} with {@link SwerveRequest.ApplyFieldSpeeds}.
+ * <p>
+ * Every loop the trajectory is sampled at the elapsed time and its velocity is applied as a
+ * feedforward, plus a proportional correction toward the sampled pose. On the red alliance the
+ * trajectory is rotated to the red side of the field. The sampled pose and the applied speeds
+ * are recorded under {@code Auto/Follow}.
+ */
+public class FollowTrajectory extends Command {
+    private final CommandSwerveDrivetrain m_drivetrain;
+    private final DriveStateInputs m_driveState;
+    private final SampledTrajectory m_trajectory;
+    private final FieldIndex m_field;
+    private final boolean m_resetPose;
+
+    private final SwerveRequest.ApplyFieldSpeeds m_request = new SwerveRequest.ApplyFieldSpeeds()
+        .withForwardPerspective(ForwardPerspectiveValue.BlueAlliance)
+        .withDriveRequestType(DriveRequestType.Velocity);
+    private final ChassisSpeeds m_speeds = new ChassisSpeeds();
+    private final double[] m_sample = new double[SampledTrajectory.kSampleSize];
+    private final Timer m_timer = new Timer();
+    private boolean m_flip = false;
+
+    /* [sample x, sample y, sample theta, vx, vy, omega] */
+    private final double[] m_output = new double[6];
+    private final InputLog m_inputLog = InputLog.getInstance();
+
+    /**
+     * Constructs the command.
+     *
+     * @param drivetrain The drivetrain to drive
+     * @param driveState Drive state read by the main loop
+     * @param trajectory Trajectory to follow, on the blue alliance side
+     * @param field      Field the trajectory is mirrored across for the red alliance
+     * @param resetPose  Whether to reset the robot pose to the start of the trajectory
+     */
+    public FollowTrajectory(
+        CommandSwerveDrivetrain drivetrain, DriveStateInputs driveState, SampledTrajectory trajectory, FieldIndex field, boolean resetPose
+    ) {
+        m_drivetrain = drivetrain;
+        m_driveState = driveState;
+        m_trajectory = trajectory;
+        m_field = field;
+        m_resetPose = resetPose;
+        addRequirements(drivetrain);
+    }
+
+    @Override
+    public void initialize() {
+        m_flip = DriverStation.getAlliance().orElse(Alliance.Blue) == Alliance.Red;
+        if (m_resetPose) {
+            m_trajectory.sample(0.0, m_sample);
+            flip();
+            m_drivetrain.resetPose(new Pose2d(
+                m_sample[SampledTrajectory.kX], m_sample[SampledTrajectory.kY],
+                Rotation2d.fromRadians(m_sample[SampledTrajectory.kTheta])
+            ));
+        }
+        m_timer.restart();
+    }
+
+    @Override
+    public void execute() {
+        m_trajectory.sample(m_timer.get(), m_sample);
+        flip();
+
+        m_speeds.vxMetersPerSecond = m_sample[SampledTrajectory.kVx] +
+            Constants.Auto.kTranslationP * (m_sample[SampledTrajectory.kX] - m_driveState.getX());
+        m_speeds.vyMetersPerSecond = m_sample[SampledTrajectory.kVy] +
+            Constants.Auto.kTranslationP * (m_sample[SampledTrajectory.kY] - m_driveState.getY());
+        m_speeds.omegaRadiansPerSecond = m_sample[SampledTrajectory.kOmega] +
+            Constants.Auto.kRotationP * MathUtil.angleModulus(m_sample[SampledTrajectory.kTheta] - m_driveState.getHeading().getRadians());
+        m_drivetrain.setControl(m_request.withSpeeds(m_speeds));
+
+        m_output[0] = m_sample[SampledTrajectory.kX];
+        m_output[1] = m_sample[SampledTrajectory.kY];
+        m_output[2] = m_sample[SampledTrajectory.kTheta];
+        m_output[3] = m_speeds.vxMetersPerSecond;
+        m_output[4] = m_speeds.vyMetersPerSecond;
+        m_output[5] = m_speeds.omegaRadiansPerSecond;
+        m_inputLog.recordOutput("Auto/Follow", m_output);
+    }
+
+    @Override
+    public boolean isFinished() {
+        return m_timer.hasElapsed(m_trajectory.getDuration());
+    }
+
+    @Override
+    public void end(boolean interrupted) {
+        m_speeds.vxMetersPerSecond = 0.0;
+        m_speeds.vyMetersPerSecond = 0.0;
+        m_speeds.omegaRadiansPerSecond = 0.0;
+        m_drivetrain.setControl(m_request.withSpeeds(m_speeds));
+    }
+
+    /** Rotates the current sample 180 degrees about the field center for the red alliance. */
+    private void flip() {
+        if (!m_flip) {
+            return;
+        }
+        m_sample[SampledTrajectory.kX] = m_field.getFieldLength() - m_sample[SampledTrajectory.kX];
+        m_sample[SampledTrajectory.kY] = m_field.getFieldWidth() - m_sample[SampledTrajectory.kY];
+        m_sample[SampledTrajectory.kTheta] = MathUtil.angleModulus(m_sample[SampledTrajectory.kTheta] + Math.PI);
+        m_sample[SampledTrajectory.kVx] = -m_sample[SampledTrajectory.kVx];
+        m_sample[SampledTrajectory.kVy] = -m_sample[SampledTrajectory.kVy];
+    }
+}
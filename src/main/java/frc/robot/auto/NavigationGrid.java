@@ -0,0 +1,468 @@
+package frc.robot.auto;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.IntegerPublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+
+import frc.robot.Constants;
+import frc.robot.field.FieldIndex;
+
+/**
+ * Occupancy grid of the field with an A* planner on top.
+ * <p>
+ * The grid is built once: cells closer than the robot radius to a wall, a reef or the barge
+ * are blocked. {@link #plan(double, double, double, double, int)} searches eight-connected
+ * cells with an octile heuristic, never cutting blocked corners, and then pulls the cell
+ * path tight into the few straight segments that still clear every obstacle. All search
+ * state lives in preallocated primitive arrays stamped per search, so a plan doesn't clear
+ * or allocate anything proportional to the field.
+ * <p>
+ * Plans are memoized by start cell and goal, so replanning from a cell the robot has
+ * already planned from is a map lookup. A robot that drifted off its plan can usually
+ * {@link #rejoin(Plan, double, double) rejoin} it in a straight line without searching at
+ * all. Planning runs on the main loop.
+ */
+public class NavigationGrid {
+    private static final double kSqrt2 = Math.sqrt(2.0);
+    private static final int[] kNeighborDx = {1, -1, 0, 0, 1, 1, -1, -1};
+    private static final int[] kNeighborDy = {0, 0, 1, -1, 1, -1, 1, -1};
+
+    /** A planned path as straight segments between points in field meters. */
+    public static class Plan {
+        private final double[] m_x;
+        private final double[] m_y;
+
+        private Plan(double[] x, double[] y) {
+            m_x = x;
+            m_y = y;
+        }
+
+        /** @return Number of points, including the start and goal */
+        public int size() {
+            return m_x.length;
+        }
+
+        /** @return Field x of a point in meters */
+        public double getX(int index) {
+            return m_x[index];
+        }
+
+        /** @return Field y of a point in meters */
+        public double getY(int index) {
+            return m_y[index];
+        }
+
+        /** @return Distance from a point to the closest point on the path */
+        public double distanceTo(double x, double y) {
+            double nearest = Math.hypot(m_x[0] - x, m_y[0] - y);
+            for (int i = 0; i + 1 < m_x.length; ++i) {
+                nearest = Math.min(nearest, Math.sqrt(segmentDistanceSq(i, x, y)));
+            }
+            return nearest;
+        }
+
+        /**
+         * Finds the point a fixed distance further along the path than the closest point to
+         * the robot.
+         *
+         * @param x         Robot field x in meters
+         * @param y         Robot field y in meters
+         * @param lookahead Distance along the path in meters
+         * @param out       Receives [x, y, distance left to the goal from that point]
+         */
+        public void lookahead(double x, double y, double lookahead, double[] out) {
+            /* Closest segment and how far along it the robot projects */
+            int segment = 0;
+            double along = 0.0;
+            double nearestSq = Double.POSITIVE_INFINITY;
+            for (int i = 0; i + 1 < m_x.length; ++i) {
+                final double distanceSq = segmentDistanceSq(i, x, y);
+                if (distanceSq < nearestSq) {
+                    nearestSq = distanceSq;
+                    segment = i;
+                    along = projection(i, x, y) * segmentLength(i);
+                }
+            }
+
+            double remaining = lookahead;
+            while (segment + 1 < m_x.length) {
+                final double length = segmentLength(segment);
+                if (along + remaining <= length || segment + 2 == m_x.length) {
+                    final double t = length > 0 ? Math.min(1.0, (along + remaining) / length) : 1.0;
+                    out[0] = m_x[segment] + (m_x[segment + 1] - m_x[segment]) * t;
+                    out[1] = m_y[segment] + (m_y[segment + 1] - m_y[segment]) * t;
+                    double left = (1.0 - t) * length;
+                    for (int i = segment + 1; i + 1 < m_x.length; ++i) {
+                        left += segmentLength(i);
+                    }
+                    out[2] = left;
+                    return;
+                }
+                remaining -= length - along;
+                along = 0.0;
+                ++segment;
+            }
+            out[0] = m_x[m_x.length - 1];
+            out[1] = m_y[m_y.length - 1];
+            out[2] = 0.0;
+        }
+
+        /** @return Path length from a point on segment i to the goal */
+        private double lengthFrom(int i, double t) {
+            double length = (1.0 - t) * segmentLength(i);
+            for (int j = i + 1; j + 1 < m_x.length; ++j) {
+                length += segmentLength(j);
+            }
+            return length;
+        }
+
+        private double segmentLength(int i) {
+            return Math.hypot(m_x[i + 1] - m_x[i], m_y[i + 1] - m_y[i]);
+        }
+
+        /** @return Fraction along segment i of the point closest to (x, y) */
+        private double projection(int i, double x, double y) {
+            final double dx = m_x[i + 1] - m_x[i];
+            final double dy = m_y[i + 1] - m_y[i];
+            final double lengthSq = dx * dx + dy * dy;
+            if (lengthSq == 0) {
+                return 0.0;
+            }
+            return Math.max(0.0, Math.min(1.0, ((x - m_x[i]) * dx + (y - m_y[i]) * dy) / lengthSq));
+        }
+
+        private double segmentDistanceSq(int i, double x, double y) {
+            final double t = projection(i, x, y);
+            final double px = m_x[i] + (m_x[i + 1] - m_x[i]) * t - x;
+            final double py = m_y[i] + (m_y[i + 1] - m_y[i]) * t - y;
+            return px * px + py * py;
+        }
+    }
+
+    private final double m_cellSize;
+    private final int m_width;
+    private final int m_height;
+    private final boolean[] m_blocked;
+
+    /* A* state, valid for a cell only when its stamp matches the current search */
+    private final int[] m_stamp;
+    private final boolean[] m_closed;
+    private final float[] m_cost;
+    private final int[] m_parent;
+    private int m_search = 0;
+
+    /* Binary min-heap of cells keyed by m_heapKey, entries may be stale */
+    private int[] m_heap = new int[1024];
+    private float[] m_heapKey = new float[1024];
+    private int m_heapSize = 0;
+
+    private final Map<Long, Plan> m_cache = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Plan> eldest) {
+            return size() > Constants.Planner.kCacheSize;
+        }
+    };
+
+    private final NetworkTable m_table = NetworkTableInstance.getDefault().getTable("Planner");
+    private final DoublePublisher m_planTimePub = m_table.getDoubleTopic("PlanTime").publish();
+    private final IntegerPublisher m_cacheHitsPub = m_table.getIntegerTopic("CacheHits").publish();
+    private final IntegerPublisher m_cacheMissesPub = m_table.getIntegerTopic("CacheMisses").publish();
+    private final IntegerPublisher m_rejoinsPub = m_table.getIntegerTopic("Rejoins").publish();
+    private long m_cacheHits = 0;
+    private long m_cacheMisses = 0;
+    private long m_rejoins = 0;
+
+    /**
+     * Builds the grid for a field.
+     *
+     * @param field Field to take the size from
+     */
+    public NavigationGrid(FieldIndex field) {
+        m_cellSize = Constants.Planner.kCellSize;
+        m_width = (int) Math.ceil(field.getFieldLength() / m_cellSize);
+        m_height = (int) Math.ceil(field.getFieldWidth() / m_cellSize);
+        final int cells = m_width * m_height;
+        m_blocked = new boolean[cells];
+        m_stamp = new int[cells];
+        m_closed = new boolean[cells];
+        m_cost = new float[cells];
+        m_parent = new int[cells];
+
+        final double radius = Constants.Planner.kRobotRadius;
+        for (int cy = 0; cy < m_height; ++cy) {
+            for (int cx = 0; cx < m_width; ++cx) {
+                final double x = (cx + 0.5) * m_cellSize;
+                final double y = (cy + 0.5) * m_cellSize;
+                boolean blocked = x < radius || y < radius ||
+                    x > field.getFieldLength() - radius || y > field.getFieldWidth() - radius;
+                for (double[] reef : Constants.Planner.kReefCenters) {
+                    blocked |= Math.hypot(x - reef[0], y - reef[1]) < Constants.Planner.kReefRadius + radius;
+                }
+                blocked |= x > Constants.Planner.kBargeMinX - radius && x < Constants.Planner.kBargeMaxX + radius &&
+                    y > Constants.Planner.kBargeMinY - radius && y < Constants.Planner.kBargeMaxY + radius;
+                m_blocked[cy * m_width + cx] = blocked;
+            }
+        }
+    }
+
+    /**
+     * Plans a path, or returns the memoized plan for the same start cell and goal.
+     *
+     * @param startX Start field x in meters
+     * @param startY Start field y in meters
+     * @param goalX  Goal field x in meters
+     * @param goalY  Goal field y in meters
+     * @param goalId Identifies the goal for memoization, for example a fiducial ID
+     * @return The plan, or null if the goal can't be reached
+     */
+    public Plan plan(double startX, double startY, double goalX, double goalY, int goalId) {
+        final int start = cellAt(startX, startY);
+        final int goal = cellAt(goalX, goalY);
+        final long key = ((long) start << 32) | (goalId & 0xFFFFFFFFL);
+
+        if (m_cache.containsKey(key)) {
+            m_cacheHitsPub.set(++m_cacheHits);
+            return m_cache.get(key);
+        }
+        m_cacheMissesPub.set(++m_cacheMisses);
+
+        final long startNanos = System.nanoTime();
+        final Plan plan = search(start, goal, goalX, goalY);
+        m_planTimePub.set((System.nanoTime() - startNanos) / 1e6);
+
+        m_cache.put(key, plan);
+        return plan;
+    }
+
+    /**
+     * Reuses an existing plan from a point off it, without searching.
+     * <p>
+     * Candidates are the plan's corners and the closest point on each of its segments. Of
+     * those the robot can reach in a straight line, the one with the shortest total distance
+     * to the goal is kept, and the new plan runs from the robot to it and then follows the old
+     * plan from there.
+     *
+     * @param plan Plan to rejoin
+     * @param x    Robot field x in meters
+     * @param y    Robot field y in meters
+     * @return The rejoined plan, or null if no point of the plan is in sight and the caller
+     *         must {@link #plan(double, double, double, double, int) plan} again
+     */
+    public Plan rejoin(Plan plan, double x, double y) {
+        final int from = cellAt(x, y);
+        /* Pushed into an obstacle, only a search can walk back out */
+        if (m_blocked[from]) {
+            return null;
+        }
+
+        int bestSegment = -1;
+        double bestT = 0.0;
+        double bestCost = Double.POSITIVE_INFINITY;
+        for (int i = 0; i + 1 < plan.size(); ++i) {
+            /* The closest point on the segment, then the segment's end corner */
+            for (int candidate = 0; candidate < 2; ++candidate) {
+                final double t = candidate == 0 ? plan.projection(i, x, y) : 1.0;
+                final double px = plan.m_x[i] + (plan.m_x[i + 1] - plan.m_x[i]) * t;
+                final double py = plan.m_y[i] + (plan.m_y[i + 1] - plan.m_y[i]) * t;
+                final double cost = Math.hypot(px - x, py - y) + plan.lengthFrom(i, t);
+                if (cost < bestCost && hasLineOfSight(from, cellAt(px, py))) {
+                    bestSegment = i;
+                    bestT = t;
+                    bestCost = cost;
+                }
+            }
+        }
+        if (bestSegment < 0) {
+            return null;
+        }
+
+        /* Robot, the rejoin point unless it is a corner, then the rest of the old plan */
+        final boolean onCorner = bestT >= 1.0;
+        final int tail = plan.size() - (bestSegment + 1);
+        final int count = 1 + (onCorner ? 0 : 1) + tail;
+        final double[] px = new double[count];
+        final double[] py = new double[count];
+        px[0] = x;
+        py[0] = y;
+        if (!onCorner) {
+            px[1] = plan.m_x[bestSegment] + (plan.m_x[bestSegment + 1] - plan.m_x[bestSegment]) * bestT;
+            py[1] = plan.m_y[bestSegment] + (plan.m_y[bestSegment + 1] - plan.m_y[bestSegment]) * bestT;
+        }
+        System.arraycopy(plan.m_x, bestSegment + 1, px, count - tail, tail);
+        System.arraycopy(plan.m_y, bestSegment + 1, py, count - tail, tail);
+
+        m_rejoinsPub.set(++m_rejoins);
+        return new Plan(px, py);
+    }
+
+    private Plan search(int start, int goal, double goalX, double goalY) {
+        ++m_search;
+        m_heapSize = 0;
+        visit(start, 0f, -1, goal);
+
+        while (m_heapSize > 0) {
+            final int cell = pop();
+            if (m_closed[cell]) {
+                continue;
+            }
+            m_closed[cell] = true;
+            if (cell == goal) {
+                return buildPlan(start, goal, goalX, goalY);
+            }
+
+            final int cx = cell % m_width;
+            final int cy = cell / m_width;
+            /* While still inside the blocked area the start was in, let the search walk out of it */
+            final boolean escaping = m_blocked[cell];
+            for (int n = 0; n < kNeighborDx.length; ++n) {
+                final int nx = cx + kNeighborDx[n];
+                final int ny = cy + kNeighborDy[n];
+                if (nx < 0 || ny < 0 || nx >= m_width || ny >= m_height) {
+                    continue;
+                }
+                final int neighbor = ny * m_width + nx;
+                /* The goal is always enterable so a goal against an obstacle is still reachable */
+                if (m_blocked[neighbor] && neighbor != goal && !escaping) {
+                    continue;
+                }
+                /* Diagonals may not squeeze between two blocked cells */
+                if (n >= 4 && !escaping && (m_blocked[cy * m_width + nx] || m_blocked[ny * m_width + cx])) {
+                    continue;
+                }
+                final float cost = m_cost[cell] + (n < 4 ? 1f : (float) kSqrt2);
+                if (m_stamp[neighbor] != m_search || cost < m_cost[neighbor]) {
+                    visit(neighbor, cost, cell, goal);
+                }
+            }
+        }
+        return null;
+    }
+
+    private void visit(int cell, float cost, int parent, int goal) {
+        if (m_stamp[cell] != m_search) {
+            m_stamp[cell] = m_search;
+            m_closed[cell] = false;
+        }
+        m_cost[cell] = cost;
+        m_parent[cell] = parent;
+        push(cell, cost + heuristic(cell, goal));
+    }
+
+    /** Octile distance in cells. */
+    private float heuristic(int cell, int goal) {
+        final int dx = Math.abs(cell % m_width - goal % m_width);
+        final int dy = Math.abs(cell / m_width - goal / m_width);
+        return (float) (Math.max(dx, dy) + (kSqrt2 - 1.0) * Math.min(dx, dy));
+    }
+
+    /** Walks the parents back from the goal and keeps only the corners line of sight needs. */
+    private Plan buildPlan(int start, int goal, double goalX, double goalY) {
+        int length = 0;
+        for (int cell = goal; cell != -1; cell = m_parent[cell]) {
+            ++length;
+        }
+        final int[] cells = new int[length];
+        for (int cell = goal, i = length - 1; cell != -1; cell = m_parent[cell], --i) {
+            cells[i] = cell;
+        }
+
+        final int[] kept = new int[length];
+        int keptCount = 0;
+        kept[keptCount++] = 0;
+        int anchor = 0;
+        while (anchor < length - 1) {
+            int next = anchor + 1;
+            for (int i = length - 1; i > anchor + 1; --i) {
+                if (hasLineOfSight(cells[anchor], cells[i])) {
+                    next = i;
+                    break;
+                }
+            }
+            kept[keptCount++] = next;
+            anchor = next;
+        }
+
+        final double[] x = new double[keptCount];
+        final double[] y = new double[keptCount];
+        for (int i = 0; i < keptCount; ++i) {
+            x[i] = (cells[kept[i]] % m_width + 0.5) * m_cellSize;
+            y[i] = (cells[kept[i]] / m_width + 0.5) * m_cellSize;
+        }
+        /* End exactly on the goal rather than its cell center */
+        x[keptCount - 1] = goalX;
+        y[keptCount - 1] = goalY;
+        return new Plan(x, y);
+    }
+
+    /** @return Whether the straight line between two cell centers only crosses free cells */
+    private boolean hasLineOfSight(int from, int to) {
+        final double x0 = from % m_width + 0.5;
+        final double y0 = from / m_width + 0.5;
+        final double x1 = to % m_width + 0.5;
+        final double y1 = to / m_width + 0.5;
+        final int steps = (int) Math.ceil(Math.max(Math.abs(x1 - x0), Math.abs(y1 - y0)) * 2);
+        for (int i = 1; i < steps; ++i) {
+            final double t = (double) i / steps;
+            final int cell = (int) (y0 + (y1 - y0) * t) * m_width + (int) (x0 + (x1 - x0) * t);
+            if (m_blocked[cell] && cell != to) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int cellAt(double x, double y) {
+        final int cx = Math.max(0, Math.min(m_width - 1, (int) (x / m_cellSize)));
+        final int cy = Math.max(0, Math.min(m_height - 1, (int) (y / m_cellSize)));
+        return cy * m_width + cx;
+    }
+
+    private void push(int cell, float key) {
+        if (m_heapSize == m_heap.length) {
+            m_heap = Arrays.copyOf(m_heap, m_heap.length * 2);
+            m_heapKey = Arrays.copyOf(m_heapKey, m_heapKey.length * 2);
+        }
+        int i = m_heapSize++;
+        while (i > 0) {
+            final int parent = (i - 1) >>> 1;
+            if (m_heapKey[parent] <= key) {
+                break;
+            }
+            m_heap[i] = m_heap[parent];
+            m_heapKey[i] = m_heapKey[parent];
+            i = parent;
+        }
+        m_heap[i] = cell;
+        m_heapKey[i] = key;
+    }
+
+    private int pop() {
+        final int top = m_heap[0];
+        final int cell = m_heap[--m_heapSize];
+        final float key = m_heapKey[m_heapSize];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= m_heapSize) {
+                break;
+            }
+            if (child + 1 < m_heapSize && m_heapKey[child + 1] < m_heapKey[child]) {
+                ++child;
+            }
+            if (key <= m_heapKey[child]) {
+                break;
+            }
+            m_heap[i] = m_heap[child];
+            m_heapKey[i] = m_heapKey[child];
+            i = child;
+        }
+        m_heap[i] = cell;
+        m_heapKey[i] = key;
+        return top;
+    }
+}
@@ -0,0 +1,115 @@
+package frc.robot.auto;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+
+/**
+ * A holonomic trajectory sampled at a fixed time step.
+ * <p>
+ * Each sample holds the field-relative pose and velocity, interleaved in one array. Since the
+ * step is uniform, {@link #sample(double, double[])} finds its samples by dividing by the
+ * step, so sampling costs the same at any point of the trajectory and doesn't allocate.
+ */
+public class SampledTrajectory {
+    private static final int kMagic = 0x5452414a; // "TRAJ", big-endian
+    private static final int kVersion = 1;
+
+    /* Indices into a sample */
+    public static final int kX = 0;
+    public static final int kY = 1;
+    public static final int kTheta = 2;
+    public static final int kVx = 3;
+    public static final int kVy = 4;
+    public static final int kOmega = 5;
+    public static final int kSampleSize = 6;
+
+    private final double m_dt;
+    private final int m_count;
+    private final double[] m_samples;
+
+    /**
+     * Constructs a trajectory from packed samples.
+     *
+     * @param dt      Time between samples in seconds
+     * @param samples Samples of {@link #kSampleSize} values each, the first at time 0
+     */
+    public SampledTrajectory(double dt, double[] samples) {
+        m_dt = dt;
+        m_count = samples.length / kSampleSize;
+        m_samples = samples;
+    }
+
+    /** @return Time from the first to the last sample in seconds */
+    public double getDuration() {
+        return (m_count - 1) * m_dt;
+    }
+
+    /** @return Time between samples in seconds */
+    public double getTimeStep() {
+        return m_dt;
+    }
+
+    /** @return The pose at the start of the trajectory */
+    public Pose2d getInitialPose() {
+        return new Pose2d(m_samples[kX], m_samples[kY], Rotation2d.fromRadians(m_samples[kTheta]));
+    }
+
+    /**
+     * Interpolates the trajectory at a time, clamped to its duration.
+     *
+     * @param time Time since the start in seconds
+     * @param out  Receives [x, y, theta, vx, vy, omega], indexed by the k constants
+     */
+    public void sample(double time, double[] out) {
+        final double position = MathUtil.clamp(time / m_dt, 0.0, m_count - 1);
+        final int index = Math.min((int) position, m_count - 2);
+        final double t = position - index;
+        final int a = index * kSampleSize;
+        final int b = a + kSampleSize;
+
+        for (int i = 0; i < kSampleSize; ++i) {
+            out[i] = m_samples[a + i] + (m_samples[b + i] - m_samples[a + i]) * t;
+        }
+        out[kTheta] = MathUtil.angleModulus(
+            m_samples[a + kTheta] + MathUtil.angleModulus(m_samples[b + kTheta] - m_samples[a + kTheta]) * t
+        );
+    }
+
+    /** Writes the trajectory in the form read by {@link #read(DataInputStream)}. */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(kMagic);
+        out.writeInt(kVersion);
+        out.writeDouble(m_dt);
+        out.writeInt(m_count);
+        for (double value : m_samples) {
+            out.writeDouble(value);
+        }
+    }
+
+    /** Reads a trajectory written by {@link #write(DataOutputStream)}. */
+    public static SampledTrajectory read(DataInputStream in) throws IOException {
+        final int magic = in.readInt();
+        if (magic != kMagic) {
+            throw new IOException(String.format("not a trajectory file, magic %08x", magic));
+        }
+        final int version = in.readInt();
+        if (version != kVersion) {
+            throw new IOException("unsupported trajectory version " + version);
+        }
+        final double dt = in.readDouble();
+        final int count = in.readInt();
+        if (count < 2) {
+            throw new IOException("trajectory has " + count + " samples");
+        }
+        final double[] samples = new double[count * kSampleSize];
+        for (int i = 0; i < samples.length; ++i) {
+            samples[i] = in.readDouble();
+        }
+        return new SampledTrajectory(dt, samples);
+    }
+}
@@ -0,0 +1,267 @@
+package frc.robot.auto;
+
+import static edu.wpi.first.units.Units.MetersPerSecond;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import edu.wpi.first.math.trajectory.Trajectory;
+import edu.wpi.first.math.trajectory.TrajectoryConfig;
+import edu.wpi.first.math.trajectory.TrajectoryGenerator;
+import edu.wpi.first.math.trajectory.constraint.SwerveDriveKinematicsConstraint;
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
+
+import frc.robot.Constants;
+import frc.robot.control.SwerveSetpointGenerator;
+import frc.robot.generated.TunerConstants;
+
+/**
+ * Generates and caches the autonomous trajectories.
+ * <p>
+ * At boot a background thread turns every {@link AutoRoutine} into a {@link SampledTrajectory}.
+ * The translation follows a WPILib spline trajectory limited by {@link Constants.Auto}, by the
+ * module speed from {@link TunerConstants} and by a share of the acceleration the carpet and
+ * drive motors allow, as found by {@link SwerveSetpointGenerator}. The heading moves smoothly
+ * from one waypoint's heading to the next. If the combined translation and rotation would push any module past
+ * its max speed, the whole trajectory is slowed down uniformly.
+ * <p>
+ * Each trajectory is stored in the deploy directory under a hash of everything it was
+ * generated from, so later boots load it instead of generating it again, and changing a
+ * waypoint or limit regenerates it. The time spent generating each routine is published under
+ * {@code Trajectories/<routine>/GenerateTime}. {@link #get(String)} returns null until a
+ * routine is ready.
+ */
+public class TrajectoryEngine {
+    /* Bump when the generator or file layout changes so old cache files are ignored */
+    private static final int kFormatVersion = 2;
+
+    private final Map<String, SampledTrajectory> m_trajectories = new ConcurrentHashMap<>();
+    private final Thread m_thread;
+
+    private final NetworkTable m_table = NetworkTableInstance.getDefault().getTable("Trajectories");
+    private final Map<String, DoublePublisher> m_generateTimePubs = new ConcurrentHashMap<>();
+
+    private static final SwerveDriveKinematics kKinematics = new SwerveDriveKinematics(
+        new Translation2d(TunerConstants.FrontLeft.LocationX, TunerConstants.FrontLeft.LocationY),
+        new Translation2d(TunerConstants.FrontRight.LocationX, TunerConstants.FrontRight.LocationY),
+        new Translation2d(TunerConstants.BackLeft.LocationX, TunerConstants.BackLeft.LocationY),
+        new Translation2d(TunerConstants.BackRight.LocationX, TunerConstants.BackRight.LocationY)
+    );
+    private static final double kMaxModuleSpeed = TunerConstants.kSpeedAt12Volts.in(MetersPerSecond);
+    private static final double kMaxAcceleration =
+        new SwerveSetpointGenerator().getMaxModuleAcceleration() * Constants.Auto.kAccelerationFraction;
+
+    /**
+     * Starts generating the given routines in the background.
+     *
+     * @param routines Routines to make available
+     */
+    public TrajectoryEngine(List<AutoRoutine> routines) {
+        final List<AutoRoutine> copy = List.copyOf(routines);
+        m_thread = new Thread(() -> {
+            for (AutoRoutine routine : copy) {
+                try {
+                    m_trajectories.put(routine.name(), loadOrGenerate(routine));
+                } catch (RuntimeException e) {
+                    DriverStation.reportError("Failed to generate trajectory " + routine.name() + ": " + e, e.getStackTrace());
+                }
+            }
+        }, "Trajectories");
+        m_thread.setDaemon(true);
+        m_thread.setPriority(Thread.MIN_PRIORITY);
+        m_thread.start();
+    }
+
+    /** @return The routine's trajectory, or null if it isn't ready or failed to generate */
+    public SampledTrajectory get(String name) {
+        return m_trajectories.get(name);
+    }
+
+    /** @return Whether the background generation has finished */
+    public boolean isDone() {
+        return !m_thread.isAlive();
+    }
+
+    private SampledTrajectory loadOrGenerate(AutoRoutine routine) {
+        final File file = new File(
+            new File(Filesystem.getDeployDirectory(), Constants.Auto.kCacheDirectory),
+            routine.name() + "-" + hash(routine) + ".traj"
+        );
+
+        if (file.isFile()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                return SampledTrajectory.read(in);
+            } catch (IOException e) {
+                DriverStation.reportWarning("Failed to read trajectory cache " + file + ", regenerating: " + e.getMessage(), false);
+            }
+        }
+
+        final long start = System.nanoTime();
+        final SampledTrajectory trajectory = generate(routine);
+        m_generateTimePubs.computeIfAbsent(routine.name(), name -> m_table.getDoubleTopic(name + "/GenerateTime").publish())
+            .set((System.nanoTime() - start) / 1e6);
+
+        /* Write to a temporary file first so a crash never leaves a truncated cache entry */
+        final File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try {
+            file.getParentFile().mkdirs();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                trajectory.write(out);
+            }
+            if (!temp.renameTo(file)) {
+                throw new IOException("rename failed");
+            }
+        } catch (IOException e) {
+            temp.delete();
+            DriverStation.reportWarning("Failed to cache trajectory " + file + ": " + e.getMessage(), false);
+        }
+        return trajectory;
+    }
+
+    /** Generates a routine's trajectory. Allocates freely, only runs in the background. */
+    static SampledTrajectory generate(AutoRoutine routine) {
+        final List<Pose2d> waypoints = routine.waypoints();
+        final int last = waypoints.size() - 1;
+        if (last < 1) {
+            throw new IllegalArgumentException("needs at least two waypoints");
+        }
+
+        /* Spline knots point along the direction of travel, the robot heading is handled separately */
+        final List<Pose2d> knots = new ArrayList<>(waypoints.size());
+        for (int i = 0; i <= last; ++i) {
+            final Translation2d from = waypoints.get(Math.max(i - 1, 0)).getTranslation();
+            final Translation2d to = waypoints.get(Math.min(i + 1, last)).getTranslation();
+            knots.add(new Pose2d(waypoints.get(i).getTranslation(), to.minus(from).getAngle()));
+        }
+        final TrajectoryConfig config = new TrajectoryConfig(Constants.Auto.kMaxSpeed, kMaxAcceleration)
+            .addConstraint(new SwerveDriveKinematicsConstraint(kKinematics, kMaxModuleSpeed));
+        final Trajectory path = TrajectoryGenerator.generateTrajectory(knots, config);
+        final List<Trajectory.State> states = path.getStates();
+
+        /* Find when the path passes each waypoint, searching forward from the previous one */
+        final double[] waypointTimes = new double[waypoints.size()];
+        waypointTimes[last] = path.getTotalTimeSeconds();
+        int searchFrom = 0;
+        for (int i = 1; i < last; ++i) {
+            final Translation2d target = waypoints.get(i).getTranslation();
+            int best = searchFrom;
+            for (int j = searchFrom; j < states.size(); ++j) {
+                if (states.get(j).poseMeters.getTranslation().getDistance(target) <
+                    states.get(best).poseMeters.getTranslation().getDistance(target)) {
+                    best = j;
+                }
+            }
+            waypointTimes[i] = states.get(best).timeSeconds;
+            searchFrom = best;
+        }
+
+        final double dt = Constants.Auto.kSampleTime;
+        final double duration = path.getTotalTimeSeconds();
+        final int count = (int) Math.ceil(duration / dt) + 1;
+        final double[] samples = new double[count * SampledTrajectory.kSampleSize];
+        double maxModuleRatio = 0.0;
+
+        int segment = 0;
+        for (int i = 0; i < count; ++i) {
+            final double time = Math.min(i * dt, duration);
+            final Trajectory.State state = path.sample(time);
+            final Rotation2d travel = state.poseMeters.getRotation();
+            final double vx = state.velocityMetersPerSecond * travel.getCos();
+            final double vy = state.velocityMetersPerSecond * travel.getSin();
+
+            /* Smoothstep the heading between the waypoints on either side */
+            while (segment < last - 1 && time > waypointTimes[segment + 1]) {
+                ++segment;
+            }
+            final double segmentStart = waypointTimes[segment];
+            final double segmentLength = Math.max(waypointTimes[segment + 1] - segmentStart, 1e-6);
+            final double s = MathUtil.clamp((time - segmentStart) / segmentLength, 0.0, 1.0);
+            final double startHeading = waypoints.get(segment).getRotation().getRadians();
+            final double turn = MathUtil.angleModulus(waypoints.get(segment + 1).getRotation().getRadians() - startHeading);
+            final double theta = MathUtil.angleModulus(startHeading + turn * s * s * (3.0 - 2.0 * s));
+            final double omega = turn * 6.0 * s * (1.0 - s) / segmentLength;
+
+            final int offset = i * SampledTrajectory.kSampleSize;
+            samples[offset + SampledTrajectory.kX] = state.poseMeters.getX();
+            samples[offset + SampledTrajectory.kY] = state.poseMeters.getY();
+            samples[offset + SampledTrajectory.kTheta] = theta;
+            samples[offset + SampledTrajectory.kVx] = vx;
+            samples[offset + SampledTrajectory.kVy] = vy;
+            samples[offset + SampledTrajectory.kOmega] = omega;
+
+            final ChassisSpeeds robotSpeeds = ChassisSpeeds.fromFieldRelativeSpeeds(vx, vy, omega, Rotation2d.fromRadians(theta));
+            for (SwerveModuleState module : kKinematics.toSwerveModuleStates(robotSpeeds)) {
+                maxModuleRatio = Math.max(maxModuleRatio, Math.abs(module.speedMetersPerSecond) / kMaxModuleSpeed);
+            }
+        }
+
+        /* Rotation on top of translation can exceed the module limit, slow everything down to fit */
+        if (maxModuleRatio > 1.0) {
+            for (int i = 0; i < count; ++i) {
+                final int offset = i * SampledTrajectory.kSampleSize;
+                samples[offset + SampledTrajectory.kVx] /= maxModuleRatio;
+                samples[offset + SampledTrajectory.kVy] /= maxModuleRatio;
+                samples[offset + SampledTrajectory.kOmega] /= maxModuleRatio;
+            }
+            return new SampledTrajectory(dt * maxModuleRatio, samples);
+        }
+        return new SampledTrajectory(dt, samples);
+    }
+
+    /** @return Hex hash of everything that affects the routine's generated trajectory */
+    private static String hash(AutoRoutine routine) {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(kFormatVersion);
+            out.writeUTF(routine.name());
+            for (Pose2d waypoint : routine.waypoints()) {
+                out.writeDouble(waypoint.getX());
+                out.writeDouble(waypoint.getY());
+                out.writeDouble(waypoint.getRotation().getRadians());
+            }
+            out.writeDouble(Constants.Auto.kMaxSpeed);
+            out.writeDouble(kMaxAcceleration);
+            out.writeDouble(Constants.Auto.kSampleTime);
+            out.writeDouble(kMaxModuleSpeed);
+            for (Translation2d module : kKinematics.getModules()) {
+                out.writeDouble(module.getX());
+                out.writeDouble(module.getY());
+            }
+            out.flush();
+
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes.toByteArray());
+            final StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 8; ++i) {
+                hex.append(String.format("%02x", digest[i]));
+            }
+            return hex.toString();
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
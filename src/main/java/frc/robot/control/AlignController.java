@@ -0,0 +1,140 @@
+package frc.robot.control;
+
+import edu.wpi.first.math.MathUtil;
+
+import frc.robot.Constants;
+
+/**
+ * Profiled pose controller behind {@link AlignToPose}.
+ * <p>
+ * Translation and heading each follow a profile: the commanded speed is the smallest of the
+ * max speed, the speed that can still stop in the remaining distance, and a proportional term
+ * that takes over near the goal, and the commanded velocity is slewed by the max acceleration.
+ * The heading error is wrapped to [-pi, pi] so the robot always turns the short way.
+ * <p>
+ * The controller holds no references to hardware, so offline tools can run it with trial
+ * gains. Limits and tolerances are in {@link Constants.Align}.
+ */
+public class AlignController {
+    private final double m_translationP;
+    private final double m_rotationP;
+
+    private double m_commandedVx = 0.0;
+    private double m_commandedVy = 0.0;
+    private double m_commandedOmega = 0.0;
+    private boolean m_atGoal = false;
+
+    /** Constructs a controller with the gains in {@link Constants.Align}. */
+    public AlignController() {
+        this(Constants.Align.kTranslationP, Constants.Align.kRotationP);
+    }
+
+    /**
+     * Constructs a controller with the given gains.
+     *
+     * @param translationP Translation gain in (m/s) per m
+     * @param rotationP    Rotation gain in (rad/s) per rad
+     */
+    public AlignController(double translationP, double rotationP) {
+        m_translationP = translationP;
+        m_rotationP = rotationP;
+    }
+
+    /**
+     * Restarts the profile from a field-relative velocity.
+     *
+     * @param vx    Field x velocity in m/s
+     * @param vy    Field y velocity in m/s
+     * @param omega Angular velocity in rad/s
+     */
+    public void reset(double vx, double vy, double omega) {
+        m_commandedVx = vx;
+        m_commandedVy = vy;
+        m_commandedOmega = omega;
+        m_atGoal = false;
+    }
+
+    /**
+     * Advances the profile by one period toward the goal.
+     *
+     * @param x         Measured field x in meters
+     * @param y         Measured field y in meters
+     * @param theta     Measured heading in radians
+     * @param goalX     Goal field x in meters
+     * @param goalY     Goal field y in meters
+     * @param goalTheta Goal heading in radians
+     * @param period    Time since the last update in seconds
+     */
+    public void calculate(double x, double y, double theta, double goalX, double goalY, double goalTheta, double period) {
+        /* Translation: profiled speed along the line to the goal */
+        final double dx = goalX - x;
+        final double dy = goalY - y;
+        final double distance = Math.hypot(dx, dy);
+        double targetVx = 0.0;
+        double targetVy = 0.0;
+        if (distance > Constants.Align.kTranslationTolerance) {
+            final double speed = profiledSpeed(
+                distance, m_translationP, Constants.Align.kMaxSpeed, Constants.Align.kMaxAcceleration
+            );
+            targetVx = dx / distance * speed;
+            targetVy = dy / distance * speed;
+        }
+        final double maxDeltaV = Constants.Align.kMaxAcceleration * period;
+        final double deltaVx = targetVx - m_commandedVx;
+        final double deltaVy = targetVy - m_commandedVy;
+        final double deltaV = Math.hypot(deltaVx, deltaVy);
+        if (deltaV > maxDeltaV) {
+            m_commandedVx += deltaVx / deltaV * maxDeltaV;
+            m_commandedVy += deltaVy / deltaV * maxDeltaV;
+        } else {
+            m_commandedVx = targetVx;
+            m_commandedVy = targetVy;
+        }
+
+        /* Heading: the same profile on the wrapped SO(2) error */
+        final double headingError = MathUtil.angleModulus(goalTheta - theta);
+        double targetOmega = 0.0;
+        if (Math.abs(headingError) > Constants.Align.kRotationTolerance) {
+            targetOmega = Math.copySign(
+                profiledSpeed(
+                    Math.abs(headingError), m_rotationP,
+                    Constants.Align.kMaxAngularRate, Constants.Align.kMaxAngularAcceleration
+                ),
+                headingError
+            );
+        }
+        final double maxDeltaOmega = Constants.Align.kMaxAngularAcceleration * period;
+        m_commandedOmega += MathUtil.clamp(targetOmega - m_commandedOmega, -maxDeltaOmega, maxDeltaOmega);
+
+        m_atGoal = distance <= Constants.Align.kTranslationTolerance &&
+            Math.abs(headingError) <= Constants.Align.kRotationTolerance;
+    }
+
+    /** @return Commanded field x velocity in m/s */
+    public double getVelocityX() {
+        return m_commandedVx;
+    }
+
+    /** @return Commanded field y velocity in m/s */
+    public double getVelocityY() {
+        return m_commandedVy;
+    }
+
+    /** @return Commanded angular velocity in rad/s */
+    public double getRotationalRate() {
+        return m_commandedOmega;
+    }
+
+    /** @return Whether the measurement was within both tolerances of the goal at the last update */
+    public boolean isAtGoal() {
+        return m_atGoal;
+    }
+
+    /**
+     * @return The speed toward a goal at the given distance: the least of the max speed,
+     *         the speed that can still stop in the distance, and the proportional speed
+     */
+    private static double profiledSpeed(double distance, double kP, double maxSpeed, double maxAcceleration) {
+        return Math.min(maxSpeed, Math.min(Math.sqrt(2.0 * maxAcceleration * distance), kP * distance));
+    }
+}
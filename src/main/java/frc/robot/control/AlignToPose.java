@@ -0,0 +1,142 @@
+package frc.robot.control;
+
+import com.ctre.phoenix6.StatusCode;
+import com.ctre.phoenix6.swerve.SwerveDrivetrain.SwerveControlParameters;
+import com.ctre.phoenix6.swerve.SwerveModule;
+import com.ctre.phoenix6.swerve.SwerveModule.DriveRequestType;
+import com.ctre.phoenix6.swerve.SwerveRequest;
+import com.ctre.phoenix6.swerve.SwerveRequest.ForwardPerspectiveValue;
+
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+
+import frc.robot.Constants;
+import frc.robot.io.InputLog;
+
+/**
+ * Drives the robot onto a field-relative goal pose.
+ * <p>
+ * This request is evaluated by Phoenix on the odometry thread, so it closes the loop at
+ * odometry rate on the fused pose instead of at camera frame rate. The profiles themselves
+ * are in {@link AlignController}.
+ * <p>
+ * The goal is set from the main loop with {@link #setGoal(double, double, double)}, which
+ * also records the goal and the command last applied under {@code Align/Command}. Gains and
+ * limits are in {@link Constants.Align}.
+ */
+public class AlignToPose implements SwerveRequest {
+    /* If the request wasn't applied for this long, restart from the measured velocity */
+    private static final double kRestartTimeout = 0.1; // 100 ms
+
+    private final SwerveRequest.ApplyFieldSpeeds m_fieldSpeeds = new SwerveRequest.ApplyFieldSpeeds()
+        .withForwardPerspective(ForwardPerspectiveValue.BlueAlliance)
+        .withDriveRequestType(DriveRequestType.Velocity);
+    private final ChassisSpeeds m_speeds = new ChassisSpeeds();
+
+    /* Written by the main loop under the request lock */
+    private double m_goalX = 0.0;
+    private double m_goalY = 0.0;
+    private double m_goalTheta = 0.0;
+    private boolean m_hasGoal = false;
+
+    /* Odometry thread state */
+    private final AlignController m_controller = new AlignController();
+    private double m_lastTimestamp = Double.NEGATIVE_INFINITY;
+
+    private volatile boolean m_atGoal = false;
+
+    /* [goal x, goal y, goal theta, vx, vy, omega, at goal], the last command under the request lock */
+    private final double[] m_output = new double[7];
+    /* Main loop copy of m_output */
+    private final double[] m_recordedOutput = new double[7];
+    private final InputLog m_inputLog = InputLog.getInstance();
+
+    /**
+     * Sets the pose to drive to.
+     *
+     * @param x     Field x in meters, blue alliance origin
+     * @param y     Field y in meters, blue alliance origin
+     * @param theta Field heading in radians
+     */
+    public void setGoal(double x, double y, double theta) {
+        synchronized (this) {
+            m_goalX = x;
+            m_goalY = y;
+            m_goalTheta = theta;
+            m_hasGoal = true;
+            System.arraycopy(m_output, 0, m_recordedOutput, 0, m_output.length);
+        }
+        /* Outside the request lock so logging never holds up the odometry thread */
+        m_inputLog.recordOutput("Align/Command", m_recordedOutput);
+    }
+
+    /** Drops the goal, the request holds still until a new one is set. */
+    public synchronized void clearGoal() {
+        m_hasGoal = false;
+        m_atGoal = false;
+    }
+
+    /** @return Whether the robot was within both tolerances of the goal at the last update */
+    public boolean isAtGoal() {
+        return m_atGoal;
+    }
+
+    @Override
+    public StatusCode apply(SwerveControlParameters parameters, SwerveModule<?, ?, ?>... modulesToApply) {
+        final double goalX;
+        final double goalY;
+        final double goalTheta;
+        synchronized (this) {
+            if (!m_hasGoal) {
+                m_lastTimestamp = Double.NEGATIVE_INFINITY;
+                m_speeds.vxMetersPerSecond = 0.0;
+                m_speeds.vyMetersPerSecond = 0.0;
+                m_speeds.omegaRadiansPerSecond = 0.0;
+                return m_fieldSpeeds.withSpeeds(m_speeds).apply(parameters, modulesToApply);
+            }
+            goalX = m_goalX;
+            goalY = m_goalY;
+            goalTheta = m_goalTheta;
+        }
+
+        /* The odometry thread may repeat an update with nothing new, hold the last output */
+        if (parameters.timestamp == m_lastTimestamp) {
+            return m_fieldSpeeds.withSpeeds(m_speeds).apply(parameters, modulesToApply);
+        }
+
+        final double x = parameters.currentPose.getX();
+        final double y = parameters.currentPose.getY();
+        final double theta = parameters.currentPose.getRotation().getRadians();
+        final double cos = Math.cos(theta);
+        final double sin = Math.sin(theta);
+
+        /* Pick up from the measured field-relative velocity when starting fresh */
+        final double dt = parameters.timestamp - m_lastTimestamp;
+        if (dt > kRestartTimeout || dt <= 0) {
+            final ChassisSpeeds measured = parameters.currentChassisSpeed;
+            m_controller.reset(
+                measured.vxMetersPerSecond * cos - measured.vyMetersPerSecond * sin,
+                measured.vxMetersPerSecond * sin + measured.vyMetersPerSecond * cos,
+                measured.omegaRadiansPerSecond
+            );
+        }
+        m_lastTimestamp = parameters.timestamp;
+        final double period = dt > kRestartTimeout || dt <= 0 ? parameters.updatePeriod : dt;
+
+        m_controller.calculate(x, y, theta, goalX, goalY, goalTheta, period);
+        m_atGoal = m_controller.isAtGoal();
+
+        m_speeds.vxMetersPerSecond = m_controller.getVelocityX();
+        m_speeds.vyMetersPerSecond = m_controller.getVelocityY();
+        m_speeds.omegaRadiansPerSecond = m_controller.getRotationalRate();
+        synchronized (this) {
+            m_output[0] = goalX;
+            m_output[1] = goalY;
+            m_output[2] = goalTheta;
+            m_output[3] = m_speeds.vxMetersPerSecond;
+            m_output[4] = m_speeds.vyMetersPerSecond;
+            m_output[5] = m_speeds.omegaRadiansPerSecond;
+            m_output[6] = m_atGoal ? 1.0 : 0.0;
+        }
+        return m_fieldSpeeds.withSpeeds(m_speeds).apply(parameters, modulesToApply);
+    }
+}
@@ -0,0 +1,133 @@
+package frc.robot.control;
+
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import edu.wpi.first.wpilibj2.command.button.CommandJoystick;
+
+import frc.robot.Constants;
+
+/**
+ * Shapes the driver's joystick into drive velocities once per loop.
+ * <p>
+ * {@link #sample()} reads each axis once and stores the results in primitive fields, so every
+ * command that drives from the stick sees the same values for the cycle without reading the
+ * HID again or allocating. Translation gets a radial deadband, so diagonals aren't cut off
+ * near the center, and rotation a scalar one; both are rescaled to start from zero at the
+ * deadband edge. An expo curve then gives finer control near the center, and the outputs are
+ * slew limited. The throttle is mapped from [-1, 1] to [0, 1]. Tuning is in
+ * {@link Constants.DriveInput}.
+ * <p>
+ * Velocities follow the WPILib convention: X forward, Y left, counterclockwise positive.
+ */
+public class DriveInput {
+    private final CommandJoystick m_joystick;
+    private final double m_maxSpeed;
+    private final double m_maxAngularRate;
+
+    private double m_velocityX = 0.0;
+    private double m_velocityY = 0.0;
+    private double m_rotationalRate = 0.0;
+    private double m_throttle = 0.0;
+    private double m_lastTimestamp = Double.NaN;
+
+    /**
+     * Constructs the pipeline.
+     *
+     * @param joystick       Joystick to read
+     * @param maxSpeed       Translation speed at full stick in m/s
+     * @param maxAngularRate Rotation rate at full twist in rad/s
+     */
+    public DriveInput(CommandJoystick joystick, double maxSpeed, double maxAngularRate) {
+        m_joystick = joystick;
+        m_maxSpeed = maxSpeed;
+        m_maxAngularRate = maxAngularRate;
+    }
+
+    /**
+     * Samples the joystick on the scheduler's button loop, ahead of any command execute.
+     * Bind this before the triggers that read the outputs.
+     *
+     * @param scheduler The scheduler to sample on
+     */
+    public void install(CommandScheduler scheduler) {
+        scheduler.getDefaultButtonLoop().bind(this::sample);
+    }
+
+    /** Reads the joystick once and updates the shaped outputs. */
+    public void sample() {
+        final double now = Timer.getFPGATimestamp();
+        final double dt = Double.isNaN(m_lastTimestamp) ? 0.0 : now - m_lastTimestamp;
+        m_lastTimestamp = now;
+
+        /* Pushing the stick forward and left gives negative Y and X */
+        final double stickX = -m_joystick.getY();
+        final double stickY = -m_joystick.getX();
+        final double twist = -m_joystick.getZ();
+        m_throttle = (m_joystick.getThrottle() + 1.0) / 2.0;
+
+        /* Radial deadband and expo on the stick magnitude, keeping its direction */
+        double targetX = 0.0;
+        double targetY = 0.0;
+        final double magnitude = Math.min(1.0, Math.hypot(stickX, stickY));
+        if (magnitude > Constants.DriveInput.kTranslationDeadband) {
+            final double shaped = shape(magnitude, Constants.DriveInput.kTranslationDeadband, Constants.DriveInput.kTranslationExpo);
+            final double scale = shaped * m_maxSpeed / Math.hypot(stickX, stickY);
+            targetX = stickX * scale;
+            targetY = stickY * scale;
+        }
+        double targetRate = 0.0;
+        if (Math.abs(twist) > Constants.DriveInput.kRotationDeadband) {
+            targetRate = Math.copySign(
+                shape(Math.min(1.0, Math.abs(twist)), Constants.DriveInput.kRotationDeadband, Constants.DriveInput.kRotationExpo),
+                twist
+            ) * m_maxAngularRate;
+        }
+
+        /* Slew limit the translation as a vector so its direction isn't distorted */
+        final double maxDeltaV = Constants.DriveInput.kTranslationSlewRate * dt;
+        final double deltaX = targetX - m_velocityX;
+        final double deltaY = targetY - m_velocityY;
+        final double deltaV = Math.hypot(deltaX, deltaY);
+        if (deltaV > maxDeltaV) {
+            m_velocityX += deltaX / deltaV * maxDeltaV;
+            m_velocityY += deltaY / deltaV * maxDeltaV;
+        } else {
+            m_velocityX = targetX;
+            m_velocityY = targetY;
+        }
+        final double maxDeltaRate = Constants.DriveInput.kRotationSlewRate * dt;
+        m_rotationalRate += Math.max(-maxDeltaRate, Math.min(maxDeltaRate, targetRate - m_rotationalRate));
+    }
+
+    /** @return Forward velocity in m/s */
+    public double getVelocityX() {
+        return m_velocityX;
+    }
+
+    /** @return Leftward velocity in m/s */
+    public double getVelocityY() {
+        return m_velocityY;
+    }
+
+    /** @return Counterclockwise rotation rate in rad/s */
+    public double getRotationalRate() {
+        return m_rotationalRate;
+    }
+
+    /** @return Throttle position, 0 at the bottom and 1 at the top */
+    public double getThrottle() {
+        return m_throttle;
+    }
+
+    /**
+     * Rescales a magnitude past the deadband to [0, 1] and applies a cubic expo.
+     *
+     * @param magnitude Stick magnitude in [deadband, 1]
+     * @param deadband  Deadband width
+     * @param expo      Blend between linear (0) and cubic (1)
+     */
+    private static double shape(double magnitude, double deadband, double expo) {
+        final double rescaled = (magnitude - deadband) / (1.0 - deadband);
+        return (1.0 - expo) * rescaled + expo * rescaled * rescaled * rescaled;
+    }
+}
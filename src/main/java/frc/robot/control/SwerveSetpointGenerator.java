@@ -0,0 +1,177 @@
+package frc.robot.control;
+
+import static edu.wpi.first.units.Units.MetersPerSecond;
+
+import com.ctre.phoenix6.swerve.SwerveModuleConstants;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+
+import frc.robot.Constants;
+import frc.robot.generated.TunerConstants;
+
+/**
+ * Turns requested robot-relative speeds into speeds the modules can actually follow.
+ * <p>
+ * Each call moves the previous setpoint toward the request by the largest fraction that keeps
+ * every module within its limits for one loop:
+ * <ul>
+ * <li>The change in each module's velocity vector, including changes of direction, stays
+ *     under the lesser of the traction limit and the drive motor's slip-current force, so
+ *     the robot accelerates as hard as the carpet allows instead of spinning its wheels.</li>
+ * <li>Each moving module's azimuth turns no faster than the steer motor allows. Modules may
+ *     reverse their drive direction instead of turning more than 90 degrees.</li>
+ * <li>No module is asked for more than its free speed.</li>
+ * </ul>
+ * Module velocities are linear in the fraction, so the acceleration limit is solved exactly;
+ * the steering limit is found with a short binary search. Geometry and gearing come from
+ * {@link TunerConstants}, the robot mass and carpet friction from {@link Constants.Drive}.
+ */
+public class SwerveSetpointGenerator {
+    private static final double kGravity = 9.81;
+    /* Below this speed a module's azimuth is not constrained */
+    private static final double kMinSteerSpeed = 0.05; // 5 cm/s
+    private static final int kSteerSearchIterations = 8;
+    /* Start over from the measured speeds if not called for this long */
+    private static final double kRestartTimeout = 0.1; // 100 ms
+
+    private final double[] m_moduleX;
+    private final double[] m_moduleY;
+    private final double m_maxModuleSpeed;
+    private final double m_maxModuleAcceleration;
+    private final double m_maxSteerRate;
+
+    private final ChassisSpeeds m_setpoint = new ChassisSpeeds();
+    private double m_lastTimestamp = Double.NEGATIVE_INFINITY;
+
+    /* Per-module scratch, [module] */
+    private final double[] m_fromVx;
+    private final double[] m_fromVy;
+    private final double[] m_toVx;
+    private final double[] m_toVy;
+
+    public SwerveSetpointGenerator() {
+        final SwerveModuleConstants<?, ?, ?>[] modules = {
+            TunerConstants.FrontLeft, TunerConstants.FrontRight, TunerConstants.BackLeft, TunerConstants.BackRight
+        };
+        m_moduleX = new double[modules.length];
+        m_moduleY = new double[modules.length];
+        for (int i = 0; i < modules.length; ++i) {
+            m_moduleX[i] = modules[i].LocationX;
+            m_moduleY[i] = modules[i].LocationY;
+        }
+        m_fromVx = new double[modules.length];
+        m_fromVy = new double[modules.length];
+        m_toVx = new double[modules.length];
+        m_toVy = new double[modules.length];
+
+        final SwerveModuleConstants<?, ?, ?> module = TunerConstants.FrontLeft;
+        m_maxModuleSpeed = TunerConstants.kSpeedAt12Volts.in(MetersPerSecond);
+
+        /* Force at the wheel right at slip current, shared over all modules, against traction */
+        final double wheelForce = module.SlipCurrent * Constants.Drive.kDriveMotorKt * module.DriveMotorGearRatio / module.WheelRadius;
+        final double motorAcceleration = wheelForce * modules.length / Constants.Drive.kMass;
+        final double tractionAcceleration = Constants.Drive.kWheelCOF * kGravity;
+        m_maxModuleAcceleration = Math.min(motorAcceleration, tractionAcceleration);
+
+        m_maxSteerRate = Constants.Drive.kSteerMotorFreeSpeed / module.SteerMotorGearRatio * Constants.Drive.kSteerRateFraction;
+    }
+
+    /** @return Max change of a module's velocity vector per second, in m/s^2 */
+    public double getMaxModuleAcceleration() {
+        return m_maxModuleAcceleration;
+    }
+
+    /**
+     * Computes the next setpoint.
+     *
+     * @param desired   Requested robot-relative speeds
+     * @param measured  Measured robot-relative speeds, used when starting over
+     * @param timestamp Current time in seconds
+     * @return Feasible robot-relative speeds for this loop; reused, don't hold on to it
+     */
+    public ChassisSpeeds generate(ChassisSpeeds desired, ChassisSpeeds measured, double timestamp) {
+        double dt = timestamp - m_lastTimestamp;
+        if (dt > kRestartTimeout || dt <= 0) {
+            m_setpoint.vxMetersPerSecond = measured.vxMetersPerSecond;
+            m_setpoint.vyMetersPerSecond = measured.vyMetersPerSecond;
+            m_setpoint.omegaRadiansPerSecond = measured.omegaRadiansPerSecond;
+            dt = Constants.Drive.kNominalPeriod;
+        }
+        m_lastTimestamp = timestamp;
+
+        /* Scale the request down uniformly until the fastest module is at its free speed */
+        double targetVx = desired.vxMetersPerSecond;
+        double targetVy = desired.vyMetersPerSecond;
+        double targetOmega = desired.omegaRadiansPerSecond;
+        double fastest = 0.0;
+        for (int i = 0; i < m_moduleX.length; ++i) {
+            fastest = Math.max(fastest, Math.hypot(targetVx - targetOmega * m_moduleY[i], targetVy + targetOmega * m_moduleX[i]));
+        }
+        if (fastest > m_maxModuleSpeed) {
+            final double scale = m_maxModuleSpeed / fastest;
+            targetVx *= scale;
+            targetVy *= scale;
+            targetOmega *= scale;
+        }
+
+        for (int i = 0; i < m_moduleX.length; ++i) {
+            m_fromVx[i] = m_setpoint.vxMetersPerSecond - m_setpoint.omegaRadiansPerSecond * m_moduleY[i];
+            m_fromVy[i] = m_setpoint.vyMetersPerSecond + m_setpoint.omegaRadiansPerSecond * m_moduleX[i];
+            m_toVx[i] = targetVx - targetOmega * m_moduleY[i];
+            m_toVy[i] = targetVy + targetOmega * m_moduleX[i];
+        }
+
+        /* Acceleration: module velocity is linear in the fraction, so solve for it directly */
+        double fraction = 1.0;
+        final double maxDeltaV = m_maxModuleAcceleration * dt;
+        for (int i = 0; i < m_moduleX.length; ++i) {
+            final double deltaV = Math.hypot(m_toVx[i] - m_fromVx[i], m_toVy[i] - m_fromVy[i]);
+            if (deltaV > maxDeltaV) {
+                fraction = Math.min(fraction, maxDeltaV / deltaV);
+            }
+        }
+
+        /* Steering: search for the largest fraction that keeps every azimuth change in reach */
+        final double maxSteer = m_maxSteerRate * dt;
+        if (steerChange(fraction) > maxSteer) {
+            double low = 0.0;
+            double high = fraction;
+            for (int iteration = 0; iteration < kSteerSearchIterations; ++iteration) {
+                final double mid = 0.5 * (low + high);
+                if (steerChange(mid) > maxSteer) {
+                    high = mid;
+                } else {
+                    low = mid;
+                }
+            }
+            fraction = low;
+        }
+
+        m_setpoint.vxMetersPerSecond += (targetVx - m_setpoint.vxMetersPerSecond) * fraction;
+        m_setpoint.vyMetersPerSecond += (targetVy - m_setpoint.vyMetersPerSecond) * fraction;
+        m_setpoint.omegaRadiansPerSecond += (targetOmega - m_setpoint.omegaRadiansPerSecond) * fraction;
+        return m_setpoint;
+    }
+
+    /**
+     * @return The largest azimuth change of any moving module when going the given fraction of
+     *         the way to the target, allowing modules to reverse instead of turning past 90 degrees
+     */
+    private double steerChange(double fraction) {
+        double largest = 0.0;
+        for (int i = 0; i < m_moduleX.length; ++i) {
+            final double vx = m_fromVx[i] + (m_toVx[i] - m_fromVx[i]) * fraction;
+            final double vy = m_fromVy[i] + (m_toVy[i] - m_fromVy[i]) * fraction;
+            if (Math.hypot(m_fromVx[i], m_fromVy[i]) < kMinSteerSpeed || Math.hypot(vx, vy) < kMinSteerSpeed) {
+                continue;
+            }
+            double change = Math.abs(MathUtil.angleModulus(Math.atan2(vy, vx) - Math.atan2(m_fromVy[i], m_fromVx[i])));
+            if (change > Math.PI / 2) {
+                change = Math.PI - change;
+            }
+            largest = Math.max(largest, change);
+        }
+        return largest;
+    }
+}
@@ -0,0 +1,351 @@
+package frc.robot.field;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import edu.wpi.first.apriltag.AprilTag;
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.apriltag.AprilTagFields;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Quaternion;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.geometry.Translation3d;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
+
+import frc.robot.Constants;
+
+/**
+ * AprilTag poses and the scoring poses derived from them, as flat arrays indexed by fiducial ID.
+ * <p>
+ * The index is built once at startup, either from a small binary file in the deploy directory
+ * or, if that is missing or was made from a different field, from the WPILib field layout JSON.
+ * The binary file is written by running this class's {@link #main(String[])}, which the
+ * optional {@code generateFieldIndex} Gradle task does. Lookups never allocate, and
+ * {@link #toLayout()} gives PhotonVision an {@link AprilTagFieldLayout} without parsing JSON
+ * again.
+ * <p>
+ * A tag's scoring pose is the robot pose that faces the tag from
+ * {@link Constants.Field#kScoringStandoff} in front of it.
+ */
+public class FieldIndex {
+    private static final int kMagic = 0x46494458; // "FIDX"
+    private static final int kVersion = 1;
+
+    private final String m_source;
+    private final double m_fieldLength;
+    private final double m_fieldWidth;
+
+    /* Indexed by fiducial ID */
+    private final boolean[] m_present;
+    private final double[] m_tagX;
+    private final double[] m_tagY;
+    private final double[] m_tagZ;
+    private final double[] m_tagQw;
+    private final double[] m_tagQx;
+    private final double[] m_tagQy;
+    private final double[] m_tagQz;
+    private final double[] m_tagYaw;
+    private final double[] m_scoringX;
+    private final double[] m_scoringY;
+    private final double[] m_scoringTheta;
+    private final boolean[] m_reef;
+
+    /* IDs of the tags that are present, in ascending order, set once every tag is in */
+    private int[] m_ids;
+
+    private FieldIndex(String source, double fieldLength, double fieldWidth, int maxId) {
+        m_source = source;
+        m_fieldLength = fieldLength;
+        m_fieldWidth = fieldWidth;
+        m_present = new boolean[maxId + 1];
+        m_tagX = new double[maxId + 1];
+        m_tagY = new double[maxId + 1];
+        m_tagZ = new double[maxId + 1];
+        m_tagQw = new double[maxId + 1];
+        m_tagQx = new double[maxId + 1];
+        m_tagQy = new double[maxId + 1];
+        m_tagQz = new double[maxId + 1];
+        m_tagYaw = new double[maxId + 1];
+        m_scoringX = new double[maxId + 1];
+        m_scoringY = new double[maxId + 1];
+        m_scoringTheta = new double[maxId + 1];
+        m_reef = new boolean[maxId + 1];
+    }
+
+    /**
+     * Loads the index for {@link Constants.Field#kLayout}, from the deploy directory if a
+     * matching file is there and from the layout JSON otherwise.
+     *
+     * @return The field index
+     */
+    public static FieldIndex load() {
+        final File file = new File(Filesystem.getDeployDirectory(), Constants.Field.kIndexFile);
+        if (file.isFile()) {
+            try {
+                final FieldIndex index = read(file);
+                if (index.m_source.equals(Constants.Field.kLayout.name())) {
+                    return index;
+                }
+                DriverStation.reportWarning("Field index " + file + " is for " + index.m_source + ", rebuilding from layout", false);
+            } catch (IOException e) {
+                DriverStation.reportWarning("Failed to read field index " + file + ": " + e.getMessage(), false);
+            }
+        }
+        return fromLayout(Constants.Field.kLayout);
+    }
+
+    /**
+     * Builds the index from one of WPILib's bundled field layouts.
+     *
+     * @param field The field to index
+     * @return The field index
+     */
+    public static FieldIndex fromLayout(AprilTagFields field) {
+        final AprilTagFieldLayout layout = AprilTagFieldLayout.loadField(field);
+
+        int maxId = 0;
+        for (AprilTag tag : layout.getTags()) {
+            maxId = Math.max(maxId, tag.ID);
+        }
+        final FieldIndex index = new FieldIndex(field.name(), layout.getFieldLength(), layout.getFieldWidth(), maxId);
+        for (AprilTag tag : layout.getTags()) {
+            final Quaternion q = tag.pose.getRotation().getQuaternion();
+            index.putTag(tag.ID, tag.pose.getX(), tag.pose.getY(), tag.pose.getZ(), q.getW(), q.getX(), q.getY(), q.getZ());
+        }
+        return index.finish();
+    }
+
+    /** Reads an index written by {@link #write(File)}. */
+    private static FieldIndex read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != kMagic || in.readInt() != kVersion) {
+                throw new IOException("not a field index, or an unsupported version");
+            }
+            final String source = in.readUTF();
+            final double fieldLength = in.readDouble();
+            final double fieldWidth = in.readDouble();
+            final int maxId = in.readInt();
+            final int count = in.readInt();
+
+            final FieldIndex index = new FieldIndex(source, fieldLength, fieldWidth, maxId);
+            for (int i = 0; i < count; ++i) {
+                index.putTag(
+                    in.readInt(),
+                    in.readDouble(), in.readDouble(), in.readDouble(),
+                    in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble()
+                );
+            }
+            return index.finish();
+        }
+    }
+
+    /**
+     * Writes the tag poses of this index in its binary form. Scoring poses are derived
+     * again on load, so changing the standoff doesn't need a new file.
+     *
+     * @param file File to write
+     * @throws IOException If the file can't be written
+     */
+    public void write(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(kMagic);
+            out.writeInt(kVersion);
+            out.writeUTF(m_source);
+            out.writeDouble(m_fieldLength);
+            out.writeDouble(m_fieldWidth);
+            out.writeInt(getMaxId());
+            out.writeInt(m_ids.length);
+            for (int id : m_ids) {
+                out.writeInt(id);
+                out.writeDouble(m_tagX[id]);
+                out.writeDouble(m_tagY[id]);
+                out.writeDouble(m_tagZ[id]);
+                out.writeDouble(m_tagQw[id]);
+                out.writeDouble(m_tagQx[id]);
+                out.writeDouble(m_tagQy[id]);
+                out.writeDouble(m_tagQz[id]);
+            }
+        }
+    }
+
+    private void putTag(int id, double x, double y, double z, double qw, double qx, double qy, double qz) {
+        m_present[id] = true;
+        m_tagX[id] = x;
+        m_tagY[id] = y;
+        m_tagZ[id] = z;
+        m_tagQw[id] = qw;
+        m_tagQx[id] = qx;
+        m_tagQy[id] = qy;
+        m_tagQz[id] = qz;
+
+        /* Yaw of the tag's outward normal */
+        final double yaw = Math.atan2(2.0 * (qw * qz + qx * qy), 1.0 - 2.0 * (qy * qy + qz * qz));
+        m_tagYaw[id] = yaw;
+
+        /* Stand off along the normal and face back into the tag */
+        m_scoringX[id] = x + Constants.Field.kScoringStandoff * Math.cos(yaw);
+        m_scoringY[id] = y + Constants.Field.kScoringStandoff * Math.sin(yaw);
+        m_scoringTheta[id] = Rotation2d.fromRadians(yaw).plus(Rotation2d.k180deg).getRadians();
+    }
+
+    /** Fills in the derived tables once every tag is in. */
+    private FieldIndex finish() {
+        for (int id : Constants.Field.kReefTagIds) {
+            if (id < m_present.length && m_present[id]) {
+                m_reef[id] = true;
+            }
+        }
+
+        int count = 0;
+        final int[] ids = new int[m_present.length];
+        for (int id = 0; id < m_present.length; ++id) {
+            if (m_present[id]) {
+                ids[count++] = id;
+            }
+        }
+        m_ids = Arrays.copyOf(ids, count);
+        return this;
+    }
+
+    /**
+     * Builds an {@link AprilTagFieldLayout} from the index, for APIs that need one.
+     *
+     * @return A new layout with the blue alliance origin
+     */
+    public AprilTagFieldLayout toLayout() {
+        final List<AprilTag> tags = new ArrayList<>(m_ids.length);
+        for (int id : m_ids) {
+            tags.add(new AprilTag(id, getTagPose(id)));
+        }
+        return new AprilTagFieldLayout(tags, m_fieldLength, m_fieldWidth);
+    }
+
+    /**
+     * Finds the tag closest to a point on the field.
+     *
+     * @param x        Field x in meters
+     * @param y        Field y in meters
+     * @param reefOnly Whether to only consider reef tags
+     * @return ID of the nearest tag, or -1 if there is none
+     */
+    public int nearestTag(double x, double y, boolean reefOnly) {
+        int nearest = -1;
+        double nearestDistanceSq = Double.POSITIVE_INFINITY;
+        for (int id : m_ids) {
+            if (reefOnly && !m_reef[id]) {
+                continue;
+            }
+            final double dx = m_tagX[id] - x;
+            final double dy = m_tagY[id] - y;
+            final double distanceSq = dx * dx + dy * dy;
+            if (distanceSq < nearestDistanceSq) {
+                nearestDistanceSq = distanceSq;
+                nearest = id;
+            }
+        }
+        return nearest;
+    }
+
+    /** @return Largest fiducial ID that can be looked up */
+    public int getMaxId() {
+        return m_present.length - 1;
+    }
+
+    /** @return IDs of all tags on the field, in ascending order; don't modify */
+    public int[] getIds() {
+        return m_ids;
+    }
+
+    /** @return Whether the field has a tag with the given ID */
+    public boolean hasTag(int id) {
+        return id >= 0 && id < m_present.length && m_present[id];
+    }
+
+    /** @return Whether the tag with the given ID is on the reef */
+    public boolean isReefTag(int id) {
+        return hasTag(id) && m_reef[id];
+    }
+
+    /** @return Length of the field in meters */
+    public double getFieldLength() {
+        return m_fieldLength;
+    }
+
+    /** @return Width of the field in meters */
+    public double getFieldWidth() {
+        return m_fieldWidth;
+    }
+
+    /** @return Field x of the tag in meters */
+    public double getTagX(int id) {
+        return m_tagX[id];
+    }
+
+    /** @return Field y of the tag in meters */
+    public double getTagY(int id) {
+        return m_tagY[id];
+    }
+
+    /** @return Height of the tag in meters */
+    public double getTagZ(int id) {
+        return m_tagZ[id];
+    }
+
+    /** @return Field heading of the tag's outward normal in radians */
+    public double getTagYaw(int id) {
+        return m_tagYaw[id];
+    }
+
+    /** @return Field x of the tag's scoring pose in meters */
+    public double getScoringX(int id) {
+        return m_scoringX[id];
+    }
+
+    /** @return Field y of the tag's scoring pose in meters */
+    public double getScoringY(int id) {
+        return m_scoringY[id];
+    }
+
+    /** @return Field heading of the tag's scoring pose in radians */
+    public double getScoringTheta(int id) {
+        return m_scoringTheta[id];
+    }
+
+    /** @return A new Pose3d of the tag; allocates, so keep it out of hot loops */
+    public Pose3d getTagPose(int id) {
+        return new Pose3d(
+            new Translation3d(m_tagX[id], m_tagY[id], m_tagZ[id]),
+            new Rotation3d(new Quaternion(m_tagQw[id], m_tagQx[id], m_tagQy[id], m_tagQz[id]))
+        );
+    }
+
+    /** @return A new Pose2d of the tag's scoring pose; allocates, so keep it out of hot loops */
+    public Pose2d getScoringPose(int id) {
+        return new Pose2d(m_scoringX[id], m_scoringY[id], Rotation2d.fromRadians(m_scoringTheta[id]));
+    }
+
+    /**
+     * Writes the index for {@link Constants.Field#kLayout} to a file, for the build to
+     * place in the deploy directory.
+     *
+     * @param args Path of the file to write
+     * @throws IOException If the file can't be written
+     */
+    public static void main(String[] args) throws IOException {
+        final File file = new File(args.length > 0 ? args[0] : Constants.Field.kIndexFile);
+        fromLayout(Constants.Field.kLayout).write(file);
+        System.out.println("Wrote field index for " + Constants.Field.kLayout.name() + " to " + file);
+    }
+}
@@ -0,0 +1,149 @@
+package frc.robot.io;
+
+import com.ctre.phoenix6.Utils;
+import com.ctre.phoenix6.swerve.SwerveDrivetrain.SwerveDriveState;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import edu.wpi.first.wpilibj.Timer;
+
+import frc.robot.subsystems.CommandSwerveDrivetrain;
+
+/**
+ * The drivetrain state as seen by the main loop.
+ * <p>
+ * The timestamp is converted to the FPGA timebase when read, so recorded states line up with
+ * the rest of the log. Replayed states are also handed to the drivetrain, which adds them to
+ * its {@link frc.robot.telemetry.PoseHistory} and applies requests against them, since the
+ * drivetrain itself is not simulated in replay.
+ * <p>
+ * Robot logic reads the drive state through this group and never from the drivetrain.
+ */
+public class DriveStateInputs implements LoggedInputs {
+    private static final int kTimestamp = 0;
+    private static final int kX = 1;
+    private static final int kY = 2;
+    private static final int kTheta = 3;
+    private static final int kVx = 4;
+    private static final int kVy = 5;
+    private static final int kOmega = 6;
+    private static final int kRawHeading = 7;
+    private static final int kOdometryPeriod = 8;
+    /* Then speed, angle, distance and position angle of each module */
+    private static final int kModules = 9;
+    private static final int kModuleSize = 4;
+
+    private final CommandSwerveDrivetrain m_drivetrain;
+    private final double[] m_values;
+
+    /* Views of the values, rebuilt once per update */
+    private final ChassisSpeeds m_speeds = new ChassisSpeeds();
+    private Rotation2d m_heading = Rotation2d.kZero;
+
+    /* Handed to the pose history in replay */
+    private final SwerveDriveState m_replayState = new SwerveDriveState();
+
+    /** @param drivetrain Drivetrain to read */
+    public DriveStateInputs(CommandSwerveDrivetrain drivetrain) {
+        m_drivetrain = drivetrain;
+        final int moduleCount = drivetrain.getModules().length;
+        m_values = new double[kModules + moduleCount * kModuleSize];
+
+        m_replayState.ModuleStates = new SwerveModuleState[moduleCount];
+        m_replayState.ModuleTargets = new SwerveModuleState[moduleCount];
+        m_replayState.ModulePositions = new SwerveModulePosition[moduleCount];
+        for (int i = 0; i < moduleCount; ++i) {
+            m_replayState.ModuleStates[i] = new SwerveModuleState();
+            m_replayState.ModuleTargets[i] = new SwerveModuleState();
+            m_replayState.ModulePositions[i] = new SwerveModulePosition();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "DriveState";
+    }
+
+    @Override
+    public void update() {
+        final SwerveDriveState state = m_drivetrain.getState();
+
+        m_values[kTimestamp] = state.Timestamp - Utils.getCurrentTimeSeconds() + Timer.getFPGATimestamp();
+        m_values[kX] = state.Pose.getX();
+        m_values[kY] = state.Pose.getY();
+        m_values[kTheta] = state.Pose.getRotation().getRadians();
+        m_values[kVx] = state.Speeds.vxMetersPerSecond;
+        m_values[kVy] = state.Speeds.vyMetersPerSecond;
+        m_values[kOmega] = state.Speeds.omegaRadiansPerSecond;
+        m_values[kRawHeading] = state.RawHeading.getRadians();
+        m_values[kOdometryPeriod] = state.OdometryPeriod;
+        for (int i = 0, offset = kModules; i < state.ModuleStates.length; ++i, offset += kModuleSize) {
+            m_values[offset] = state.ModuleStates[i].speedMetersPerSecond;
+            m_values[offset + 1] = state.ModuleStates[i].angle.getRadians();
+            m_values[offset + 2] = state.ModulePositions[i].distanceMeters;
+            m_values[offset + 3] = state.ModulePositions[i].angle.getRadians();
+        }
+        refresh();
+    }
+
+    @Override
+    public double[] getValues() {
+        return m_values;
+    }
+
+    @Override
+    public void replay(double[] values) {
+        System.arraycopy(values, 0, m_values, 0, Math.min(values.length, m_values.length));
+        refresh();
+
+        m_replayState.Timestamp = m_values[kTimestamp];
+        m_replayState.Pose = new Pose2d(m_values[kX], m_values[kY], m_heading);
+        m_replayState.Speeds = new ChassisSpeeds(m_values[kVx], m_values[kVy], m_values[kOmega]);
+        m_replayState.RawHeading = new Rotation2d(m_values[kRawHeading]);
+        m_replayState.OdometryPeriod = m_values[kOdometryPeriod];
+        for (int i = 0, offset = kModules; i < m_replayState.ModuleStates.length; ++i, offset += kModuleSize) {
+            m_replayState.ModuleStates[i].speedMetersPerSecond = m_values[offset];
+            m_replayState.ModuleStates[i].angle = new Rotation2d(m_values[offset + 1]);
+            m_replayState.ModulePositions[i].distanceMeters = m_values[offset + 2];
+            m_replayState.ModulePositions[i].angle = new Rotation2d(m_values[offset + 3]);
+        }
+        m_drivetrain.replayState(m_replayState);
+    }
+
+    /** @return Time of the state in FPGA seconds */
+    public double getTimestamp() {
+        return m_values[kTimestamp];
+    }
+
+    /** @return Field x in meters */
+    public double getX() {
+        return m_values[kX];
+    }
+
+    /** @return Field y in meters */
+    public double getY() {
+        return m_values[kY];
+    }
+
+    /** @return Field heading */
+    public Rotation2d getHeading() {
+        return m_heading;
+    }
+
+    /** @return Robot-relative speeds, owned by this object and overwritten by the next update */
+    public ChassisSpeeds getSpeeds() {
+        return m_speeds;
+    }
+
+    private void refresh() {
+        if (m_heading.getRadians() != m_values[kTheta]) {
+            m_heading = new Rotation2d(m_values[kTheta]);
+        }
+        m_speeds.vxMetersPerSecond = m_values[kVx];
+        m_speeds.vyMetersPerSecond = m_values[kVy];
+        m_speeds.omegaRadiansPerSecond = m_values[kOmega];
+    }
+}
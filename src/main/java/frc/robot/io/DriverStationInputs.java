@@ -0,0 +1,84 @@
+package frc.robot.io;
+
+import java.util.Optional;
+import java.util.OptionalInt;
+
+import edu.wpi.first.hal.AllianceStationID;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.DriverStation.Alliance;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+
+/**
+ * Robot mode, alliance station and match time.
+ * <p>
+ * Replayed values are pushed into the simulated Driver Station, so everything that reads
+ * {@link DriverStation} or the robot mode sees them at the start of the next loop.
+ */
+public class DriverStationInputs implements LoggedInputs {
+    private static final int kEnabled = 0;
+    private static final int kAutonomous = 1;
+    private static final int kTest = 2;
+    private static final int kEStop = 3;
+    private static final int kDsAttached = 4;
+    private static final int kFmsAttached = 5;
+    /* 0 unknown, 1 to 3 red, 4 to 6 blue */
+    private static final int kStation = 6;
+    private static final int kMatchTime = 7;
+    private static final int kSize = 8;
+
+    private final double[] m_values = new double[kSize];
+
+    @Override
+    public String getName() {
+        return "DriverStation";
+    }
+
+    @Override
+    public void update() {
+        m_values[kEnabled] = DriverStation.isEnabled() ? 1 : 0;
+        m_values[kAutonomous] = DriverStation.isAutonomous() ? 1 : 0;
+        m_values[kTest] = DriverStation.isTest() ? 1 : 0;
+        m_values[kEStop] = DriverStation.isEStopped() ? 1 : 0;
+        m_values[kDsAttached] = DriverStation.isDSAttached() ? 1 : 0;
+        m_values[kFmsAttached] = DriverStation.isFMSAttached() ? 1 : 0;
+
+        final Optional<Alliance> alliance = DriverStation.getAlliance();
+        final OptionalInt location = DriverStation.getLocation();
+        m_values[kStation] = alliance.isPresent() && location.isPresent()
+            ? (alliance.get() == Alliance.Red ? 0 : 3) + location.getAsInt()
+            : 0;
+        m_values[kMatchTime] = DriverStation.getMatchTime();
+    }
+
+    @Override
+    public double[] getValues() {
+        return m_values;
+    }
+
+    @Override
+    public void replay(double[] values) {
+        System.arraycopy(values, 0, m_values, 0, Math.min(values.length, kSize));
+
+        DriverStationSim.setEnabled(m_values[kEnabled] != 0);
+        DriverStationSim.setAutonomous(m_values[kAutonomous] != 0);
+        DriverStationSim.setTest(m_values[kTest] != 0);
+        DriverStationSim.setEStop(m_values[kEStop] != 0);
+        DriverStationSim.setDsAttached(m_values[kDsAttached] != 0);
+        DriverStationSim.setFmsAttached(m_values[kFmsAttached] != 0);
+        DriverStationSim.setAllianceStationId(toStation((int) m_values[kStation]));
+        DriverStationSim.setMatchTime(m_values[kMatchTime]);
+        DriverStationSim.notifyNewData();
+    }
+
+    private static AllianceStationID toStation(int station) {
+        switch (station) {
+            case 1: return AllianceStationID.Red1;
+            case 2: return AllianceStationID.Red2;
+            case 3: return AllianceStationID.Red3;
+            case 4: return AllianceStationID.Blue1;
+            case 5: return AllianceStationID.Blue2;
+            case 6: return AllianceStationID.Blue3;
+            default: return AllianceStationID.Unknown;
+        }
+    }
+}
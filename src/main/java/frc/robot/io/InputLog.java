@@ -0,0 +1,215 @@
+package frc.robot.io;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.photonvision.common.dataflow.structures.Packet;
+import org.photonvision.targeting.PhotonPipelineResult;
+
+import edu.wpi.first.util.datalog.DataLog;
+import edu.wpi.first.util.datalog.DoubleArrayLogEntry;
+import edu.wpi.first.util.datalog.IntegerLogEntry;
+import edu.wpi.first.util.datalog.RawLogEntry;
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.RobotController;
+
+import frc.robot.Constants;
+
+/**
+ * Records every robot input once per loop into a WPILog, and feeds them back in replay.
+ * <p>
+ * Input groups are {@link LoggedInputs} registered at construction. {@link #update()} runs at
+ * the start of every loop: it reads each group from the hardware, appends it under
+ * {@code Inputs/<name>}, and then appends the loop's FPGA time under {@code Inputs/Cycle}, so
+ * everything up to a cycle record belongs to that loop. Camera results are appended from the
+ * vision threads as they arrive, as raw PhotonVision packets under
+ * {@code Inputs/Vision/<camera>}, with the receive time as the record timestamp. Robot code
+ * appends its decisions with {@link #recordOutput(String, double[])}.
+ * <p>
+ * In replay, {@code LogReplay} from the test sources hands recorded values to the groups
+ * instead, and outputs are written under {@code Replay/Outputs/<name>} to the replay log,
+ * next to the recorded ones.
+ */
+public final class InputLog {
+    public static final String kInputPrefix = "Inputs/";
+    public static final String kOutputPrefix = "Outputs/";
+    public static final String kReplayOutputPrefix = "Replay/Outputs/";
+    public static final String kCameraPrefix = kInputPrefix + "Vision/";
+    public static final String kCycleEntry = kInputPrefix + "Cycle";
+
+    /* Initial packet size for camera results, grows as needed */
+    private static final int kCameraPacketSize = 256;
+
+    private static InputLog s_instance;
+
+    /** @return The input log of the robot program, recording only on a real robot */
+    public static synchronized InputLog getInstance() {
+        if (s_instance == null) {
+            if (Constants.InputLog.kEnabled && RobotBase.isReal()) {
+                /* Only our own entries, the NetworkTables mirror would bury the inputs */
+                DataLogManager.logNetworkTables(false);
+                s_instance = new InputLog(DataLogManager.getLog(), false);
+            } else {
+                s_instance = new InputLog(null, false);
+            }
+        }
+        return s_instance;
+    }
+
+    /**
+     * Makes the input log of the robot program a replay, before the robot is constructed.
+     *
+     * @param output Log that receives the recomputed outputs
+     * @return The input log
+     */
+    static synchronized InputLog startReplay(DataLog output) {
+        if (s_instance != null) {
+            throw new IllegalStateException("Replay must start before the input log is first used");
+        }
+        s_instance = new InputLog(output, true);
+        return s_instance;
+    }
+
+    private final List<LoggedInputs> m_inputs = new ArrayList<>();
+    private final List<DoubleArrayLogEntry> m_inputEntries = new ArrayList<>();
+    private final Map<String, LoggedInputs> m_inputsByName = new HashMap<>();
+    private final Map<String, Consumer<PhotonPipelineResult>> m_cameras = new HashMap<>();
+    private final Map<String, DoubleArrayLogEntry> m_outputEntries = new HashMap<>();
+
+    private final DataLog m_log;
+    private final IntegerLogEntry m_cycleEntry;
+    private final boolean m_replay;
+
+    private InputLog(DataLog log, boolean replay) {
+        m_log = log;
+        m_replay = replay;
+        m_cycleEntry = log != null && !replay ? new IntegerLogEntry(log, kCycleEntry) : null;
+    }
+
+    /** @return Whether inputs come from a recorded log instead of the hardware */
+    public boolean isReplay() {
+        return m_replay;
+    }
+
+    /** Registers an input group, updated at the start of every loop from then on. */
+    public synchronized void register(LoggedInputs inputs) {
+        if (m_inputsByName.putIfAbsent(inputs.getName(), inputs) != null) {
+            throw new IllegalArgumentException("Duplicate input group " + inputs.getName());
+        }
+        m_inputs.add(inputs);
+        m_inputEntries.add(m_log != null && !m_replay ? new DoubleArrayLogEntry(m_log, kInputPrefix + inputs.getName()) : null);
+    }
+
+    /**
+     * Registers a camera whose results are recorded with {@link #recordCameraResult}.
+     *
+     * @param name   Camera name
+     * @param replay Receives the camera's recorded results in replay, on the replay thread
+     */
+    public synchronized void registerCamera(String name, Consumer<PhotonPipelineResult> replay) {
+        m_cameras.put(name, replay);
+    }
+
+    /** Reads and records every input group. Call once at the start of the loop. */
+    public synchronized void update() {
+        if (m_replay) {
+            return;
+        }
+
+        final long now = RobotController.getFPGATime();
+        for (int i = 0; i < m_inputs.size(); ++i) {
+            final LoggedInputs inputs = m_inputs.get(i);
+            inputs.update();
+            final DoubleArrayLogEntry entry = m_inputEntries.get(i);
+            if (entry != null) {
+                entry.append(inputs.getValues(), now);
+            }
+        }
+        if (m_cycleEntry != null) {
+            m_cycleEntry.append(now, now);
+        }
+    }
+
+    /**
+     * Records one camera result. Safe to call from any thread.
+     *
+     * @param entry  Entry created with {@link #createCameraEntry(String)}, may be null
+     * @param result Result as received from the camera
+     */
+    public static void recordCameraResult(RawLogEntry entry, PhotonPipelineResult result) {
+        if (entry == null) {
+            return;
+        }
+        final Packet packet = new Packet(kCameraPacketSize);
+        PhotonPipelineResult.photonStruct.pack(packet, result);
+        /* Undo the latency compensation in the timestamp to get the receive time back */
+        final long receiveMicros = Math.round(result.getTimestampSeconds() * 1e6) +
+            result.metadata.getPublishTimestampMicros() - result.metadata.getCaptureTimestampMicros();
+        entry.append(packet.getWrittenDataCopy(), receiveMicros);
+    }
+
+    /** @return Entry for a camera's results, or null when nothing is recorded */
+    public synchronized RawLogEntry createCameraEntry(String camera) {
+        return m_log != null && !m_replay ? new RawLogEntry(m_log, kCameraPrefix + camera) : null;
+    }
+
+    /**
+     * Records a decision of the robot code. Allocation-free after the first call for a name.
+     *
+     * @param name   Output name, recorded under {@code Outputs/<name>}
+     * @param values Values to record
+     */
+    public synchronized void recordOutput(String name, double[] values) {
+        if (m_log == null) {
+            return;
+        }
+        DoubleArrayLogEntry entry = m_outputEntries.get(name);
+        if (entry == null) {
+            entry = new DoubleArrayLogEntry(m_log, (m_replay ? kReplayOutputPrefix : kOutputPrefix) + name);
+            m_outputEntries.put(name, entry);
+        }
+        entry.append(values, RobotController.getFPGATime());
+    }
+
+    /**
+     * Hands recorded values to an input group.
+     *
+     * @param name   Group name
+     * @param values Recorded values
+     * @return Whether a group of that name is registered
+     */
+    synchronized boolean replayInputs(String name, double[] values) {
+        final LoggedInputs inputs = m_inputsByName.get(name);
+        if (inputs == null) {
+            return false;
+        }
+        inputs.replay(values);
+        return true;
+    }
+
+    /**
+     * Hands a recorded camera result to its camera.
+     *
+     * @param camera        Camera name
+     * @param data          Recorded packet
+     * @param receiveMicros Receive time from the record timestamp
+     * @return Whether a camera of that name is registered
+     */
+    boolean replayCameraResult(String camera, byte[] data, long receiveMicros) {
+        final Consumer<PhotonPipelineResult> replay;
+        synchronized (this) {
+            replay = m_cameras.get(camera);
+        }
+        if (replay == null) {
+            return false;
+        }
+        final PhotonPipelineResult result = PhotonPipelineResult.photonStruct.unpack(new Packet(data));
+        result.setReceiveTimestampMicros(receiveMicros);
+        replay.accept(result);
+        return true;
+    }
+}
@@ -0,0 +1,71 @@
+package frc.robot.io;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+
+/**
+ * Axes, buttons and the first POV of one Driver Station joystick port.
+ * <p>
+ * Replayed values are pushed into the simulated Driver Station, so joysticks and triggers
+ * bound to the port see them at the start of the next loop without any changes.
+ */
+public class JoystickInputs implements LoggedInputs {
+    private static final int kMaxAxes = 12;
+
+    private static final int kAxisCount = 0;
+    private static final int kAxes = 1;
+    private static final int kButtonCount = kAxes + kMaxAxes;
+    private static final int kButtons = kButtonCount + 1;
+    private static final int kPovCount = kButtons + 1;
+    private static final int kPov = kPovCount + 1;
+    private static final int kSize = kPov + 1;
+
+    private final int m_port;
+    private final double[] m_values = new double[kSize];
+
+    /** @param port Driver Station port of the joystick */
+    public JoystickInputs(int port) {
+        m_port = port;
+    }
+
+    @Override
+    public String getName() {
+        return "Joystick" + m_port;
+    }
+
+    @Override
+    public void update() {
+        final int axisCount = Math.min(DriverStation.getStickAxisCount(m_port), kMaxAxes);
+        m_values[kAxisCount] = axisCount;
+        for (int i = 0; i < kMaxAxes; ++i) {
+            m_values[kAxes + i] = i < axisCount ? DriverStation.getStickAxis(m_port, i) : 0.0;
+        }
+        m_values[kButtonCount] = DriverStation.getStickButtonCount(m_port);
+        m_values[kButtons] = DriverStation.getStickButtons(m_port);
+        m_values[kPovCount] = DriverStation.getStickPOVCount(m_port);
+        m_values[kPov] = m_values[kPovCount] > 0 ? DriverStation.getStickPOV(m_port, 0) : -1;
+    }
+
+    @Override
+    public double[] getValues() {
+        return m_values;
+    }
+
+    @Override
+    public void replay(double[] values) {
+        System.arraycopy(values, 0, m_values, 0, Math.min(values.length, kSize));
+
+        final int axisCount = (int) m_values[kAxisCount];
+        DriverStationSim.setJoystickAxisCount(m_port, axisCount);
+        for (int i = 0; i < axisCount; ++i) {
+            DriverStationSim.setJoystickAxis(m_port, i, m_values[kAxes + i]);
+        }
+        DriverStationSim.setJoystickButtonCount(m_port, (int) m_values[kButtonCount]);
+        DriverStationSim.setJoystickButtons(m_port, (int) m_values[kButtons]);
+        DriverStationSim.setJoystickPOVCount(m_port, (int) m_values[kPovCount]);
+        if (m_values[kPovCount] > 0) {
+            DriverStationSim.setJoystickPOV(m_port, 0, (int) m_values[kPov]);
+        }
+        DriverStationSim.notifyNewData();
+    }
+}
@@ -0,0 +1,25 @@
+package frc.robot.io;
+
+/**
+ * A group of robot inputs that is read once per loop and recorded as one fixed-layout array.
+ * <p>
+ * Robot code reads inputs through the group's getters instead of from the hardware, so in
+ * replay the same code sees the recorded values. See {@link InputLog}.
+ */
+public interface LoggedInputs {
+    /** @return Name of the group, recorded under {@code Inputs/<name>} */
+    String getName();
+
+    /** Reads the group's values from the hardware. Called once per loop outside replay. */
+    void update();
+
+    /** @return The group's current values, owned by the group and overwritten by the next update */
+    double[] getValues();
+
+    /**
+     * Takes over recorded values in place of reading the hardware.
+     *
+     * @param values Values as recorded from {@link #getValues()}
+     */
+    void replay(double[] values);
+}
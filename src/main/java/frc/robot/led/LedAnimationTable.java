@@ -0,0 +1,83 @@
+package frc.robot.led;
+
+import edu.wpi.first.wpilibj.LEDPattern;
+import edu.wpi.first.wpilibj.RobotController;
+
+/**
+ * An {@link LEDPattern} baked into a periodic table of packed RGB frames.
+ * <p>
+ * WPILib patterns are functions of {@link RobotController#getTime()}, and the animated ones
+ * repeat with a fixed cycle. {@link #compile} evaluates the pattern once per frame over a
+ * single cycle by temporarily replacing the robot time source. At runtime a frame is picked
+ * by indexing into the table with the current time, so showing an animated pattern costs an
+ * array copy instead of a chain of per-pixel lambdas.
+ */
+public class LedAnimationTable {
+    private final int m_length;
+    private final int m_frameCount;
+    private final long m_cycleMicros;
+    private final byte[] m_frames;
+
+    private LedAnimationTable(int length, int frameCount, long cycleMicros) {
+        m_length = length;
+        m_frameCount = frameCount;
+        m_cycleMicros = cycleMicros;
+        m_frames = new byte[frameCount * length * 3];
+    }
+
+    /**
+     * Bakes a pattern into a table. Must not run while anything else relies on
+     * {@link RobotController#getTime()}, so call it during robot initialization.
+     *
+     * @param pattern      The pattern to bake
+     * @param length       Number of LEDs the pattern is applied to
+     * @param cycleSeconds How long the pattern takes to repeat, or 0 for a static pattern
+     * @param framePeriod  Time between baked frames in seconds
+     * @return The baked table
+     */
+    public static LedAnimationTable compile(LEDPattern pattern, int length, double cycleSeconds, double framePeriod) {
+        final long cycleMicros = Math.round(cycleSeconds * 1e6);
+        final int frameCount = cycleMicros > 0 ? Math.max(1, (int) Math.round(cycleSeconds / framePeriod)) : 1;
+        final LedAnimationTable table = new LedAnimationTable(length, frameCount, cycleMicros);
+
+        final LedFrame scratch = new LedFrame(length);
+        final long[] fakeTime = new long[1];
+        RobotController.setTimeSource(() -> fakeTime[0]);
+        try {
+            for (int i = 0; i < frameCount; ++i) {
+                fakeTime[0] = cycleMicros * i / frameCount;
+                pattern.applyTo(scratch, scratch);
+                scratch.copyTo(table.m_frames, i * length * 3);
+            }
+        } finally {
+            RobotController.setTimeSource(RobotController::getFPGATime);
+        }
+        return table;
+    }
+
+    /**
+     * @param timeMicros Robot time in microseconds
+     * @return Index of the frame to show at that time
+     */
+    public int frameIndexAt(long timeMicros) {
+        if (m_frameCount == 1) {
+            return 0;
+        }
+        return (int) ((timeMicros % m_cycleMicros) * m_frameCount / m_cycleMicros);
+    }
+
+    /** Copies the frame at the given index into a frame of the table's length. */
+    public void loadFrame(int index, LedFrame dst) {
+        dst.load(m_frames, index * m_length * 3);
+    }
+
+    /** Copies the range [start, end) of the frame at the given index into the same range of a frame. */
+    public void loadSegment(int index, LedFrame dst, int start, int end) {
+        dst.load(m_frames, index * m_length * 3, start, end);
+    }
+
+    /** @return Number of baked frames in one cycle */
+    public int getFrameCount() {
+        return m_frameCount;
+    }
+}
@@ -0,0 +1,146 @@
+package frc.robot.led;
+
+import frc.robot.Constants.Led.Layer;
+import frc.robot.Constants.Led.Segment;
+import frc.robot.Constants.Led.StatusList;
+
+/**
+ * Prioritized stack of LED layers for each strip segment.
+ * <p>
+ * Every segment has one slot per {@link Layer}. Callers set or clear a layer's status,
+ * optionally with an expiry or as a flashing overlay, and only the highest priority layer
+ * that is set and not expired is visible. Setting a layer to what it already holds is a
+ * no-op, so callers can refresh their layer every loop. Each segment carries a version
+ * number that only changes when its stack changes, which lets the renderer skip segments
+ * that have nothing new to show.
+ * <p>
+ * Layers are written from the main loop and resolved from the render loop, so all stack
+ * access is synchronized.
+ */
+public class LedCompositor {
+    private static final long kNoExpiry = Long.MAX_VALUE;
+
+    /** The visible result of a segment's layer stack at some time. */
+    public static class Resolution {
+        /** Status to show, {@link StatusList#BLANK} if no layer is visible */
+        public StatusList status = StatusList.BLANK;
+        /** Time in microseconds at which the resolution may change without a new version */
+        public long validUntil = kNoExpiry;
+    }
+
+    private final int m_layerCount = Layer.values().length;
+
+    /* Indexed by [segment * m_layerCount + layer] */
+    private final StatusList[] m_statuses;
+    private final long[] m_expiries;
+    private final long[] m_flashStarts;
+    private final long[] m_flashPeriods;
+
+    private final int[] m_versions;
+
+    public LedCompositor() {
+        final int slots = Segment.values().length * m_layerCount;
+        m_statuses = new StatusList[slots];
+        m_expiries = new long[slots];
+        m_flashStarts = new long[slots];
+        m_flashPeriods = new long[slots];
+        m_versions = new int[Segment.values().length];
+    }
+
+    /**
+     * Sets a layer on one segment.
+     *
+     * @param layer   The layer to set
+     * @param segment The segment to set it on
+     * @param status  Status to show, or null to clear the layer
+     * @param expiry  Time in microseconds after which the layer disappears, or
+     *                {@link Long#MAX_VALUE} to keep it until changed
+     */
+    public synchronized void set(Layer layer, Segment segment, StatusList status, long expiry) {
+        final int slot = slot(segment, layer);
+        if (m_statuses[slot] == status && m_expiries[slot] == expiry && m_flashPeriods[slot] == 0) {
+            return;
+        }
+        m_statuses[slot] = status;
+        m_expiries[slot] = status != null ? expiry : kNoExpiry;
+        m_flashPeriods[slot] = 0;
+        ++m_versions[segment.ordinal()];
+    }
+
+    /**
+     * Sets a layer on one segment to flash a status, alternating with blank.
+     *
+     * @param layer      The layer to set
+     * @param segment    The segment to set it on
+     * @param status     Status to flash
+     * @param numFlashes Number of flashes before the layer disappears
+     * @param period     Time between toggles in microseconds
+     * @param now        Current time in microseconds
+     */
+    public synchronized void flash(Layer layer, Segment segment, StatusList status, int numFlashes, long period, long now) {
+        final int slot = slot(segment, layer);
+        m_statuses[slot] = status;
+        m_flashStarts[slot] = now;
+        m_flashPeriods[slot] = Math.max(1, period);
+        m_expiries[slot] = now + 2L * numFlashes * m_flashPeriods[slot];
+        ++m_versions[segment.ordinal()];
+    }
+
+    /**
+     * @param layer The layer to check
+     * @param now   Current time in microseconds
+     * @return Whether the layer is set and not expired on any segment
+     */
+    public synchronized boolean isActive(Layer layer, long now) {
+        for (Segment segment : Segment.values()) {
+            final int slot = slot(segment, layer);
+            if (m_statuses[slot] != null && now < m_expiries[slot]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** @return Version of the segment's layer stack, changes whenever the stack does */
+    public synchronized int getVersion(Segment segment) {
+        return m_versions[segment.ordinal()];
+    }
+
+    /**
+     * Resolves the visible status of a segment.
+     *
+     * @param segment The segment to resolve
+     * @param now     Current time in microseconds
+     * @param out     Receives the visible status and how long it stays valid
+     */
+    public synchronized void resolve(Segment segment, long now, Resolution out) {
+        out.status = StatusList.BLANK;
+        out.validUntil = kNoExpiry;
+
+        for (int layer = m_layerCount - 1; layer >= 0; --layer) {
+            final int slot = segment.ordinal() * m_layerCount + layer;
+            if (m_statuses[slot] == null) {
+                continue;
+            }
+            if (now >= m_expiries[slot]) {
+                /* Expired layers are dropped lazily, without bumping the version */
+                m_statuses[slot] = null;
+                continue;
+            }
+            out.validUntil = Math.min(out.validUntil, m_expiries[slot]);
+
+            if (m_flashPeriods[slot] > 0) {
+                final long toggles = (now - m_flashStarts[slot]) / m_flashPeriods[slot];
+                out.status = toggles % 2 == 0 ? m_statuses[slot] : StatusList.BLANK;
+                out.validUntil = Math.min(out.validUntil, m_flashStarts[slot] + (toggles + 1) * m_flashPeriods[slot]);
+            } else {
+                out.status = m_statuses[slot];
+            }
+            return;
+        }
+    }
+
+    private int slot(Segment segment, Layer layer) {
+        return segment.ordinal() * m_layerCount + layer.ordinal();
+    }
+}
@@ -0,0 +1,92 @@
+package frc.robot.led;
+
+import java.util.Arrays;
+
+import edu.wpi.first.wpilibj.AddressableLEDBuffer;
+import edu.wpi.first.wpilibj.LEDReader;
+import edu.wpi.first.wpilibj.LEDWriter;
+
+/**
+ * One frame of LED data, stored as packed RGB bytes.
+ * <p>
+ * Frames can be rendered into directly by {@code LEDPattern.applyTo(frame, frame)},
+ * compared byte for byte, and copied into an {@link AddressableLEDBuffer} for output.
+ */
+public class LedFrame implements LEDReader, LEDWriter {
+    private final byte[] m_rgb;
+
+    /**
+     * Constructs a black frame.
+     *
+     * @param length Number of LEDs in the frame
+     */
+    public LedFrame(int length) {
+        m_rgb = new byte[length * 3];
+    }
+
+    @Override
+    public int getLength() {
+        return m_rgb.length / 3;
+    }
+
+    @Override
+    public int getRed(int index) {
+        return m_rgb[index * 3] & 0xFF;
+    }
+
+    @Override
+    public int getGreen(int index) {
+        return m_rgb[index * 3 + 1] & 0xFF;
+    }
+
+    @Override
+    public int getBlue(int index) {
+        return m_rgb[index * 3 + 2] & 0xFF;
+    }
+
+    @Override
+    public void setRGB(int index, int r, int g, int b) {
+        m_rgb[index * 3] = (byte) r;
+        m_rgb[index * 3 + 1] = (byte) g;
+        m_rgb[index * 3 + 2] = (byte) b;
+    }
+
+    /** @return Whether both frames hold exactly the same bytes */
+    public boolean contentEquals(LedFrame other) {
+        return Arrays.equals(m_rgb, other.m_rgb);
+    }
+
+    /** Overwrites this frame with the contents of another frame of the same length. */
+    public void copyFrom(LedFrame other) {
+        System.arraycopy(other.m_rgb, 0, m_rgb, 0, m_rgb.length);
+    }
+
+    /** Copies the packed RGB bytes of this frame into an array. */
+    public void copyTo(byte[] dst, int offset) {
+        System.arraycopy(m_rgb, 0, dst, offset, m_rgb.length);
+    }
+
+    /** Overwrites this frame with packed RGB bytes from an array. */
+    public void load(byte[] src, int offset) {
+        System.arraycopy(src, offset, m_rgb, 0, m_rgb.length);
+    }
+
+    /**
+     * Overwrites a range of LEDs in this frame with the same range of a packed RGB frame.
+     *
+     * @param src       Array holding the source frame
+     * @param srcOffset Index of the source frame's first byte in {@code src}
+     * @param start     First LED to copy
+     * @param end       One past the last LED to copy
+     */
+    public void load(byte[] src, int srcOffset, int start, int end) {
+        System.arraycopy(src, srcOffset + start * 3, m_rgb, start * 3, (end - start) * 3);
+    }
+
+    /** Writes this frame into an LED buffer of at least the same length. */
+    public void copyTo(AddressableLEDBuffer buffer) {
+        for (int i = 0, length = getLength(); i < length; ++i) {
+            buffer.setRGB(i, getRed(i), getGreen(i), getBlue(i));
+        }
+    }
+}
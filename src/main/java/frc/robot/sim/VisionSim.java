@@ -0,0 +1,91 @@
+package frc.robot.sim;
+
+import org.photonvision.simulation.PhotonCameraSim;
+import org.photonvision.simulation.SimCameraProperties;
+import org.photonvision.simulation.VisionSystemSim;
+
+import com.ctre.phoenix6.swerve.SwerveDrivetrain.SwerveDriveState;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.SwerveDriveOdometry;
+
+import frc.robot.Constants;
+import frc.robot.field.FieldIndex;
+import frc.robot.subsystems.CommandSwerveDrivetrain;
+import frc.robot.subsystems.Vision;
+import frc.robot.vision.VisionPipeline;
+
+/**
+ * Simulated PhotonVision for every configured camera.
+ * <p>
+ * The field's AprilTags are placed in a {@link VisionSystemSim}, and each camera of the
+ * {@link Vision} subsystem gets a {@link PhotonCameraSim} at its robot-to-camera transform
+ * with the resolution, frame rate, latency and calibration noise in
+ * {@link Constants.VisionSim}. After every drivetrain simulation step the vision sim is
+ * updated from the ground-truth pose; cameras only produce a frame when one is due at their
+ * frame rate. The simulated results go through the same pipelines, fusion and snapshot as
+ * real ones.
+ * <p>
+ * The ground truth is plain odometry on the simulated module positions and raw gyro heading,
+ * which never sees a vision measurement. Rendering from the fused pose instead would feed
+ * the estimate back into its own measurements. It follows the drivetrain's pose resets, since
+ * those place the simulated robot.
+ * <p>
+ * Drawing the camera streams is the expensive part, so it is off unless enabled in
+ * {@link Constants.VisionSim}, which keeps headless stepped runs fast.
+ */
+public class VisionSim {
+    private final VisionSystemSim m_visionSim = new VisionSystemSim("main");
+    private final CommandSwerveDrivetrain m_drivetrain;
+    private final SwerveDriveOdometry m_groundTruth;
+
+    /**
+     * Constructs the simulation and hooks it into the drivetrain simulation.
+     *
+     * @param vision     Vision subsystem whose cameras to simulate
+     * @param field      Field to take the tags from
+     * @param drivetrain Drivetrain to follow
+     */
+    public VisionSim(Vision vision, FieldIndex field, CommandSwerveDrivetrain drivetrain) {
+        m_drivetrain = drivetrain;
+        m_visionSim.addAprilTags(field.toLayout());
+
+        final SwerveDriveState state = drivetrain.getState();
+        m_groundTruth = new SwerveDriveOdometry(drivetrain.getKinematics(), state.RawHeading, state.ModulePositions, state.Pose);
+
+        final SimCameraProperties properties = new SimCameraProperties();
+        properties.setCalibration(
+            Constants.VisionSim.kResolutionWidth, Constants.VisionSim.kResolutionHeight,
+            Rotation2d.fromDegrees(Constants.VisionSim.kDiagonalFov)
+        );
+        properties.setCalibError(Constants.VisionSim.kCalibrationError, Constants.VisionSim.kCalibrationErrorStdDev);
+        properties.setFPS(Constants.VisionSim.kFps);
+        properties.setAvgLatencyMs(Constants.VisionSim.kAverageLatencyMs);
+        properties.setLatencyStdDevMs(Constants.VisionSim.kLatencyStdDevMs);
+
+        for (int i = 0; i < vision.getCameraCount(); ++i) {
+            final VisionPipeline pipeline = vision.getPipeline(i);
+            final PhotonCameraSim cameraSim = new PhotonCameraSim(pipeline.getCamera(), properties);
+            cameraSim.enableRawStream(Constants.VisionSim.kEnableStreams);
+            cameraSim.enableProcessedStream(Constants.VisionSim.kEnableStreams);
+            cameraSim.enableDrawWireframe(Constants.VisionSim.kEnableWireframe);
+            m_visionSim.addCamera(cameraSim, pipeline.getConfig().robotToCamera());
+        }
+
+        drivetrain.onSimulationStep(deltaTime -> update());
+        drivetrain.onPoseReset(this::reset);
+    }
+
+    /** Advances the ground truth and renders any frames that are due from it. */
+    private synchronized void update() {
+        final SwerveDriveState state = m_drivetrain.getState();
+        m_visionSim.update(m_groundTruth.update(state.RawHeading, state.ModulePositions));
+    }
+
+    /** Places the simulated robot where the drivetrain pose was reset to. */
+    private synchronized void reset(Pose2d pose) {
+        final SwerveDriveState state = m_drivetrain.getState();
+        m_groundTruth.resetPosition(state.RawHeading, state.ModulePositions, pose);
+    }
+}
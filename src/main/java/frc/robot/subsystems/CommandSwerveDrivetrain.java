@@ -2,10 +2,17 @@ package frc.robot.subsystems;
 
 import static edu.wpi.first.units.Units.*;
 
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
 import java.util.function.Supplier;
 
 import com.ctre.phoenix6.SignalLogger;
 import com.ctre.phoenix6.Utils;
+import com.ctre.phoenix6.swerve.SwerveDrivetrain.SwerveControlParameters;
+import com.ctre.phoenix6.swerve.SwerveDrivetrain.SwerveDriveState;
 import com.ctre.phoenix6.swerve.SwerveDrivetrainConstants;
 import com.ctre.phoenix6.swerve.SwerveModuleConstants;
 import com.ctre.phoenix6.swerve.SwerveRequest;
@@ -23,7 +30,12 @@ import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.Subsystem;
 import edu.wpi.first.wpilibj2.command.sysid.SysIdRoutine;
 
+import frc.robot.Constants;
+import frc.robot.generated.TunerConstants;
 import frc.robot.generated.TunerConstants.TunerSwerveDrivetrain;
+import frc.robot.telemetry.LoopProfiler;
+import frc.robot.telemetry.OdometryHealthMonitor;
+import frc.robot.telemetry.PoseHistory;
 
 /**
  * Class that extends the Phoenix 6 SwerveDrivetrain class and implements
@@ -31,8 +43,15 @@ import frc.robot.generated.TunerConstants.TunerSwerveDrivetrain;
  */
 public class CommandSwerveDrivetrain extends TunerSwerveDrivetrain implements Subsystem {
     private static final double kSimLoopPeriod = 0.005; // 5 ms
+    private static volatile boolean s_steppedSimulation = false;
+    private static volatile boolean s_replay = false;
+    private final List<DoubleConsumer> m_simulationListeners = new CopyOnWriteArrayList<>();
+    private final List<Consumer<Pose2d>> m_resetListeners = new CopyOnWriteArrayList<>();
     private Notifier m_simNotifier = null;
     private double m_lastSimTime;
+    /* Timestamp of the latest odometry update, only kept in stepped simulation */
+    private final Object m_odometryLock = new Object();
+    private double m_lastOdometryTime = Double.NEGATIVE_INFINITY;
 
     /* Blue alliance sees forward as 0 degrees (toward red alliance wall) */
     private static final Rotation2d kBlueAlliancePerspectiveRotation = Rotation2d.kZero;
@@ -41,6 +60,19 @@ public class CommandSwerveDrivetrain extends TunerSwerveDrivetrain implements Su
     /* Keep track if we've ever applied the operator perspective before or not */
     private boolean m_hasAppliedOperatorPerspective = false;
 
+    /* Time spent in periodic() each loop */
+    private final LoopProfiler m_profiler = LoopProfiler.getInstance();
+    private final int m_periodicChannel = m_profiler.channel("Subsystems/Drivetrain");
+
+    /* Odometry health and pose history, fed from the odometry thread ahead of the registered telemetry function */
+    private OdometryHealthMonitor m_odometryHealth;
+    private PoseHistory m_poseHistory;
+    private volatile Consumer<SwerveDriveState> m_telemetryFunction = null;
+
+    /* Replay: the latest recorded state, and the parameters requests are applied with */
+    private SwerveDriveState m_replayState = null;
+    private SwerveControlParameters m_replayParameters = null;
+
     /* Swerve requests to apply during SysId characterization */
     private final SwerveRequest.SysIdSwerveTranslation m_translationCharacterization = new SwerveRequest.SysIdSwerveTranslation();
     private final SwerveRequest.SysIdSwerveSteerGains m_steerCharacterization = new SwerveRequest.SysIdSwerveSteerGains();
@@ -123,6 +155,7 @@ public class CommandSwerveDrivetrain extends TunerSwerveDrivetrain implements Su
         SwerveModuleConstants<?, ?, ?>... modules
     ) {
         super(drivetrainConstants, modules);
+        startOdometryListeners(0);
         if (Utils.isSimulation()) {
             startSimThread();
         }
@@ -147,6 +180,7 @@ public class CommandSwerveDrivetrain extends TunerSwerveDrivetrain implements Su
         SwerveModuleConstants<?, ?, ?>... modules
     ) {
         super(drivetrainConstants, odometryUpdateFrequency, modules);
+        startOdometryListeners(odometryUpdateFrequency);
         if (Utils.isSimulation()) {
             startSimThread();
         }
@@ -179,6 +213,7 @@ public class CommandSwerveDrivetrain extends TunerSwerveDrivetrain implements Su
         SwerveModuleConstants<?, ?, ?>... modules
     ) {
         super(drivetrainConstants, odometryUpdateFrequency, odometryStandardDeviation, visionStandardDeviation, modules);
+        startOdometryListeners(odometryUpdateFrequency);
         if (Utils.isSimulation()) {
             startSimThread();
         }
@@ -194,6 +229,29 @@ public class CommandSwerveDrivetrain extends TunerSwerveDrivetrain implements Su
         return run(() -> this.setControl(requestSupplier.get()));
     }
 
+    /**
+     * Register the specified lambda to be executed whenever our SwerveDriveState function
+     * is updated in our odometry thread.
+     * <p>
+     * The odometry health monitor and pose history always run ahead of the registered function.
+     *
+     * @param telemetryFunction Function to call for telemetry or logging
+     */
+    @Override
+    public void registerTelemetry(Consumer<SwerveDriveState> telemetryFunction) {
+        m_telemetryFunction = telemetryFunction;
+    }
+
+    /** @return History of fused poses and field-relative velocities, in the Phoenix timebase */
+    public PoseHistory getPoseHistory() {
+        return m_poseHistory;
+    }
+
+    /** @return Whether the odometry thread is within its jitter and DAQ failure thresholds */
+    public boolean isOdometryHealthy() {
+        return m_odometryHealth.isHealthy();
+    }
+
     /**
      * Runs the SysId Quasistatic test in the given direction for the routine
      * specified by {@link #m_sysIdRoutineToApply}.
@@ -235,10 +293,87 @@ public class CommandSwerveDrivetrain extends TunerSwerveDrivetrain implements Su
                 m_hasAppliedOperatorPerspective = true;
             });
         }
+
+        m_odometryHealth.update(Utils.getCurrentTimeSeconds());
+
+        m_profiler.lap(m_periodicChannel);
+    }
+
+    private void startOdometryListeners(double odometryUpdateFrequency) {
+        /* 0 Hz means the Phoenix default: 250 Hz on CAN FD, 100 Hz on CAN 2.0 */
+        if (odometryUpdateFrequency <= 0) {
+            odometryUpdateFrequency = TunerConstants.kCANBus.isNetworkFD() ? 250 : 100;
+        }
+        m_odometryHealth = new OdometryHealthMonitor(odometryUpdateFrequency);
+        m_poseHistory = new PoseHistory((int) Math.ceil(Constants.PoseHistory.kLength * odometryUpdateFrequency));
+        super.registerTelemetry(this::handleTelemetry);
+
+        if (s_replay) {
+            /* Recorded states replace odometry, see replayState */
+            getOdometryThread().stop();
+            m_replayParameters = new SwerveControlParameters();
+            m_replayParameters.kinematics = getKinematics();
+            m_replayParameters.moduleLocations = getModuleLocations();
+            m_replayParameters.kMaxSpeedMps = TunerConstants.kSpeedAt12Volts.in(MetersPerSecond);
+        }
+    }
+
+    /**
+     * Takes over a recorded drive state in replay, in place of the odometry thread: the state
+     * goes into the pose history, and requests passed to {@link #setControl(SwerveRequest)}
+     * are applied against it.
+     *
+     * @param state Recorded state with its timestamp in the FPGA timebase, kept by reference
+     */
+    public void replayState(SwerveDriveState state) {
+        m_poseHistory.add(state);
+        m_replayState = state;
+    }
+
+    /**
+     * Applies a request to the drivetrain. In replay the odometry thread is stopped, so the
+     * request is applied right away against the latest recorded state instead.
+     *
+     * @param request Request to apply
+     */
+    @Override
+    public void setControl(SwerveRequest request) {
+        super.setControl(request);
+        if (s_replay && m_replayState != null) {
+            m_replayParameters.operatorForwardDirection = getOperatorForwardDirection();
+            m_replayParameters.currentPose = m_replayState.Pose;
+            m_replayParameters.currentChassisSpeed = m_replayState.Speeds;
+            m_replayParameters.timestamp = m_replayState.Timestamp;
+            m_replayParameters.updatePeriod = m_replayState.OdometryPeriod;
+            request.apply(m_replayParameters, getModules());
+        }
+    }
+
+    /** Runs on the odometry thread for every state update. */
+    private void handleTelemetry(SwerveDriveState state) {
+        m_odometryHealth.sample(state);
+        if (!s_replay) {
+            m_poseHistory.add(state);
+        }
+        if (s_steppedSimulation) {
+            synchronized (m_odometryLock) {
+                m_lastOdometryTime = state.Timestamp;
+                m_odometryLock.notifyAll();
+            }
+        }
+
+        final Consumer<SwerveDriveState> telemetryFunction = m_telemetryFunction;
+        if (telemetryFunction != null) {
+            telemetryFunction.accept(state);
+        }
     }
 
     private void startSimThread() {
         m_lastSimTime = Utils.getCurrentTimeSeconds();
+        if (s_steppedSimulation) {
+            /* The stepping harness calls simulationStep itself */
+            return;
+        }
 
         /* Run simulation at a faster rate so PID gains behave more reasonably */
         m_simNotifier = new Notifier(() -> {
@@ -246,12 +381,110 @@ public class CommandSwerveDrivetrain extends TunerSwerveDrivetrain implements Su
             double deltaTime = currentTime - m_lastSimTime;
             m_lastSimTime = currentTime;
 
-            /* use the measured time delta, get battery voltage from WPILib */
-            updateSimState(deltaTime, RobotController.getBatteryVoltage());
+            /* use the measured time delta */
+            simulationStep(deltaTime);
         });
         m_simNotifier.startPeriodic(kSimLoopPeriod);
     }
 
+    /**
+     * Advances the drivetrain simulation.
+     * <p>
+     * Called from the sim thread, or directly by a stepping harness in stepped simulation.
+     *
+     * @param deltaTime Time to advance in seconds
+     */
+    public void simulationStep(double deltaTime) {
+        /* get battery voltage from WPILib */
+        updateSimState(deltaTime, RobotController.getBatteryVoltage());
+
+        for (DoubleConsumer listener : m_simulationListeners) {
+            listener.accept(deltaTime);
+        }
+    }
+
+    /**
+     * Blocks until the odometry thread has finished an update stamped at or after a time, so
+     * a stepping harness sees the state, and the applied request, of the step it just ran.
+     *
+     * @param time    Time in the Phoenix timebase
+     * @param timeout Longest time to wait in seconds of wall time
+     * @throws IllegalStateException If the odometry thread did not update in time
+     */
+    public void awaitOdometry(double time, double timeout) {
+        final long deadline = System.nanoTime() + (long) (timeout * 1e9);
+        synchronized (m_odometryLock) {
+            while (m_lastOdometryTime < time) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new IllegalStateException("Odometry thread did not update within " + timeout + " s");
+                }
+                try {
+                    m_odometryLock.wait(remaining / 1_000_000, (int) (remaining % 1_000_000));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted waiting for odometry", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Registers a function to run after every drivetrain simulation step, on the same thread,
+     * for other simulations that follow the robot.
+     *
+     * @param listener Called with the step length in seconds
+     */
+    public void onSimulationStep(DoubleConsumer listener) {
+        m_simulationListeners.add(listener);
+    }
+
+    /**
+     * Registers a function to run after every {@link #resetPose(Pose2d)}, on the caller's
+     * thread, for simulations that place the robot.
+     *
+     * @param listener Called with the pose the drivetrain was reset to
+     */
+    public void onPoseReset(Consumer<Pose2d> listener) {
+        m_resetListeners.add(listener);
+    }
+
+    /**
+     * Selects stepped simulation for drivetrains constructed afterwards: no sim thread is
+     * started, and the caller advances the simulation with {@link #simulationStep(double)}
+     * in lockstep with the rest of the robot, waiting for each odometry update with
+     * {@link #awaitOdometry(double, double)}.
+     *
+     * @param stepped Whether to use stepped simulation
+     */
+    public static void setSteppedSimulation(boolean stepped) {
+        s_steppedSimulation = stepped;
+    }
+
+    /**
+     * Selects log replay for drivetrains constructed afterwards: the odometry thread is
+     * stopped, and the pose history and requests only see the replayed drive states, which
+     * carry FPGA timestamps. See {@link #replayState(SwerveDriveState)}.
+     *
+     * @param replay Whether a log is being replayed
+     */
+    public static void setReplay(boolean replay) {
+        s_replay = replay;
+    }
+
+    /**
+     * @param fpgaTime Time in FPGA seconds
+     * @return The time in the timebase of the {@link PoseHistory}
+     */
+    public static double toPoseHistoryTime(double fpgaTime) {
+        return s_replay ? fpgaTime : Utils.fpgaToCurrentTime(fpgaTime);
+    }
+
+    /** @return The sim loop period the sim thread runs at, and stepping harnesses should use */
+    public static double getSimLoopPeriod() {
+        return kSimLoopPeriod;
+    }
+
     /**
      * Adds a vision measurement to the Kalman Filter. This will correct the odometry pose estimate
      * while still accounting for measurement noise.
@@ -285,4 +518,30 @@ public class CommandSwerveDrivetrain extends TunerSwerveDrivetrain implements Su
     ) {
         super.addVisionMeasurement(visionRobotPoseMeters, Utils.fpgaToCurrentTime(timestampSeconds), visionMeasurementStdDevs);
     }
+
+    /**
+     * Resets the pose of the robot. The pose history is cleared so lookups
+     * never interpolate across the jump.
+     *
+     * @param pose Current pose of the robot
+     */
+    @Override
+    public void resetPose(Pose2d pose) {
+        super.resetPose(pose);
+        m_poseHistory.clear();
+        for (Consumer<Pose2d> listener : m_resetListeners) {
+            listener.accept(pose);
+        }
+    }
+
+    /**
+     * Return the pose at a given timestamp, if the buffer is not empty.
+     *
+     * @param timestampSeconds The timestamp of the pose in seconds.
+     * @return The pose at the given timestamp (or Optional.empty() if the buffer is empty).
+     */
+    @Override
+    public Optional<Pose2d> samplePoseAt(double timestampSeconds) {
+        return super.samplePoseAt(Utils.fpgaToCurrentTime(timestampSeconds));
+    }
 }
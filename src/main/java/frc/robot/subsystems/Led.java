@@ -9,26 +9,37 @@ import java.util.Map;
 import edu.wpi.first.wpilibj.AddressableLED;
 import edu.wpi.first.wpilibj.AddressableLEDBuffer;
 import edu.wpi.first.wpilibj.LEDPattern;
-import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.RobotController;
 import edu.wpi.first.wpilibj.LEDPattern.GradientType;
 import edu.wpi.first.wpilibj.util.Color;
 
 import frc.robot.Constants;
+import frc.robot.led.LedAnimationTable;
+import frc.robot.led.LedCompositor;
+import frc.robot.led.LedFrame;
 
+/**
+ * Drives the LED strip from its own render loop.
+ * <p>
+ * Callers push statuses onto prioritized layers of each strip segment through a
+ * {@link LedCompositor}, for example a base alliance color, a vision lock indicator and a
+ * timed flash overlay. A {@link Notifier} renders at a fixed frame rate: for each segment it
+ * shows only the top visible layer, and only re-composites the segment when its layer stack
+ * changed or its animation advanced. The composited back buffer is only written to the
+ * strip when it differs from the front buffer already shown.
+ */
 public class Led {
-    private Timer flashTimer;
-    private boolean isFlashing;
-    private int flashCount;
-    private int totalFlashes;
-    private double flashSpeed;
-    private Constants.Led.StatusList flashStatus;
-    private boolean ledOn;
-    
     private AddressableLED l_led;
 
     private AddressableLEDBuffer l_ledBuffer;
 
-    private Constants.Led.StatusList Status;
+    private final Notifier l_renderer;
+
+    /* Written by callers, resolved by the render loop */
+    private final LedCompositor l_compositor = new LedCompositor();
+
+    private volatile Constants.Led.StatusList Status = Constants.Led.StatusList.BLANK;
 
     private LEDPattern robotDisconnectMask = LEDPattern.steps(Map.of(0, Color.kWhite, 0.04, Color.kBlack)).scrollAtRelativeSpeed(Percent.per(Second).of(5));
     private LEDPattern robotDisconnectBase = LEDPattern.gradient(GradientType.kContinuous, Color.kDarkRed, Color.kDarkRed); 
@@ -61,18 +72,59 @@ public class Led {
     private LEDPattern robotLoaded = LEDPattern.solid(Color.kLime).atBrightness(Percent.of(100));
     private LEDPattern robotRelease = LEDPattern.solid(Color.kOrange).atBrightness(Percent.of(100));
 
+    private LEDPattern robotOdometryFault = LEDPattern.solid(Color.kYellow).blink(Seconds.of(0.25)).atBrightness(Percent.of(80));
+
     private LEDPattern ledBlank = LEDPattern.solid(Color.kBlack);
 
+    /* One baked animation table per status */
+    private final LedAnimationTable[] l_tables = new LedAnimationTable[Constants.Led.StatusList.values().length];
+
+    /* Render-loop double buffer: the back frame is composited, the front frame is on the strip */
+    private final LedFrame l_backFrame = new LedFrame(Constants.Led.kLength);
+    private final LedFrame l_frontFrame = new LedFrame(Constants.Led.kLength);
+
+    /* Render-loop state per segment */
+    private final Constants.Led.Segment[] l_segments = Constants.Led.Segment.values();
+    private final LedCompositor.Resolution[] l_resolutions = new LedCompositor.Resolution[l_segments.length];
+    private final int[] l_resolvedVersions = new int[l_segments.length];
+    private final Constants.Led.StatusList[] l_shownStatuses = new Constants.Led.StatusList[l_segments.length];
+    private final int[] l_shownFrameIndices = new int[l_segments.length];
+
     public Led() {
+        this(Constants.Led.kFrameRate);
+    }
+
+    /**
+     * Constructs the LED strip and starts its render loop.
+     *
+     * @param frameRate Render loop frequency in Hz
+     */
+    public Led(double frameRate) {
         l_led = new AddressableLED(Constants.Led.l_ledID);
-        l_ledBuffer = new AddressableLEDBuffer(101);
+        l_ledBuffer = new AddressableLEDBuffer(Constants.Led.kLength);
         l_led.setLength(l_ledBuffer.getLength());
         l_led.setData(l_ledBuffer);
-        this.isFlashing = false;
-        this.flashTimer = new Timer();
+
+        for (int i = 0; i < l_segments.length; ++i) {
+            l_resolutions[i] = new LedCompositor.Resolution();
+            l_resolvedVersions[i] = -1;
+            l_shownFrameIndices[i] = -1;
+        }
+
+        /* Bake every status pattern up front so rendering is just a table lookup */
+        for (Constants.Led.StatusList status : Constants.Led.StatusList.values()) {
+            l_tables[status.ordinal()] = LedAnimationTable.compile(
+                patternFor(status), Constants.Led.kLength, cycleFor(status), framePeriodFor(status));
+        }
+
         l_led.start();
+
+        l_renderer = new Notifier(this::render);
+        l_renderer.setName("Led");
+        l_renderer.startPeriodic(1.0 / frameRate);
     }
 
+    /** @return The status last set on the base layer */
     public Constants.Led.StatusList getStatus() {
         return this.Status;
     }
@@ -81,103 +133,197 @@ public class Led {
         setStatus(desiredStatus);
     }
 
+    /**
+     * Sets the base layer of every segment. The render loop picks it up on its next frame.
+     */
     public void setStatus(Constants.Led.StatusList desiredStatus) {
         this.Status = desiredStatus;
-        switch (desiredStatus) {
+        setLayer(Constants.Led.Layer.BASE, desiredStatus);
+    }
+
+    /**
+     * Sets a layer on every segment until it is changed or cleared.
+     *
+     * @param layer  The layer to set
+     * @param status Status to show on the layer
+     */
+    public void setLayer(Constants.Led.Layer layer, Constants.Led.StatusList status) {
+        for (Constants.Led.Segment segment : l_segments) {
+            l_compositor.set(layer, segment, status, Long.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Sets a layer on one segment for a limited time.
+     *
+     * @param layer    The layer to set
+     * @param segment  The segment to set it on
+     * @param status   Status to show on the layer
+     * @param duration How long to show the layer in seconds
+     */
+    public void setLayer(Constants.Led.Layer layer, Constants.Led.Segment segment, Constants.Led.StatusList status, double duration) {
+        l_compositor.set(layer, segment, status, RobotController.getFPGATime() + Math.round(duration * 1e6));
+    }
+
+    /**
+     * Clears a layer on every segment, revealing the layers below it.
+     *
+     * @param layer The layer to clear
+     */
+    public void clearLayer(Constants.Led.Layer layer) {
+        for (Constants.Led.Segment segment : l_segments) {
+            l_compositor.set(layer, segment, null, Long.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Start flashing without blocking the main loop. The flash is an overlay on the
+     * {@link Constants.Led.Layer#FLASH} layer of every segment and removes itself when
+     * done. If flashing is retriggered, it restarts.
+     *
+     * @param desiredStatus Status to flash
+     * @param numFlashes    Number of times to flash
+     * @param speed         Time between toggles in seconds
+     */
+    public void startFlashing(Constants.Led.StatusList desiredStatus, int numFlashes, double speed) {
+        final long now = RobotController.getFPGATime();
+        for (Constants.Led.Segment segment : l_segments) {
+            l_compositor.flash(Constants.Led.Layer.FLASH, segment, desiredStatus, numFlashes, Math.round(speed * 1e6), now);
+        }
+    }
+
+    public boolean getFlashing() {
+        return l_compositor.isActive(Constants.Led.Layer.FLASH, RobotController.getFPGATime());
+    }
+
+    /** Renders one frame. Runs on the render loop. */
+    private void render() {
+        final long now = RobotController.getFPGATime();
+        boolean composited = false;
+
+        for (int i = 0; i < l_segments.length; ++i) {
+            final Constants.Led.Segment segment = l_segments[i];
+            final LedCompositor.Resolution resolution = l_resolutions[i];
+
+            /* Only walk the layer stack when it changed or a layer timed out or toggled */
+            final int version = l_compositor.getVersion(segment);
+            if (version != l_resolvedVersions[i] || now >= resolution.validUntil) {
+                l_resolvedVersions[i] = version;
+                l_compositor.resolve(segment, now, resolution);
+            }
+
+            final LedAnimationTable table = l_tables[resolution.status.ordinal()];
+            final int frameIndex = table.frameIndexAt(now);
+            if (resolution.status == l_shownStatuses[i] && frameIndex == l_shownFrameIndices[i]) {
+                continue;
+            }
+            l_shownStatuses[i] = resolution.status;
+            l_shownFrameIndices[i] = frameIndex;
+
+            table.loadSegment(frameIndex, l_backFrame, segment.start, segment.end);
+            composited = true;
+        }
+
+        /* Only present the back buffer if it differs from what is on the strip */
+        if (!composited || l_backFrame.contentEquals(l_frontFrame)) {
+            return;
+        }
+        l_backFrame.copyTo(l_ledBuffer);
+        l_led.setData(l_ledBuffer);
+        l_frontFrame.copyFrom(l_backFrame);
+    }
+
+    private LEDPattern patternFor(Constants.Led.StatusList status) {
+        switch (status) {
             case DISCONNECT:
-                robotDisconnect.applyTo(this.l_ledBuffer);
-                break;
+                return robotDisconnect;
             case DISABLED:
-                robotDisabled.applyTo(this.l_ledBuffer);
-                break;
+                return robotDisabled;
             case IDLE:
-                robotIdle.applyTo(this.l_ledBuffer);
-                break;
+                return robotIdle;
             case IDLERED:
-                robotRedIdle.applyTo(this.l_ledBuffer);
-                break;
+                return robotRedIdle;
             case IDLEBLUE:
-                robotBlueIdle.applyTo(this.l_ledBuffer);
-                break;
+                return robotBlueIdle;
             case AUTONOMOUS:
-                robotAutonomous.applyTo(this.l_ledBuffer);
-                break;
+                return robotAutonomous;
             case LOADED:
-                robotLoaded.applyTo(this.l_ledBuffer);
-                break;
+                return robotLoaded;
             case READY:
-                robotReady.applyTo(this.l_ledBuffer);
-                break;
+                return robotReady;
             case RELEASE:
-                robotRelease.applyTo(this.l_ledBuffer);
-                break;
-            case BLANK:
-                ledBlank.applyTo(this.l_ledBuffer);
-                break;
+                return robotRelease;
+            case ODOMETRYFAULT:
+                return robotOdometryFault;
             case UNSAFE:
-                robotElevatorUnsafe.applyTo(this.l_ledBuffer);
+                return robotElevatorUnsafe;
+            case BLANK:
+            default:
+                return ledBlank;
         }
-
-        l_led.setData(this.l_ledBuffer);
     }
 
-    /**
-     * Start flashing without blocking the main loop
-     */
-    public void startFlashing(Constants.Led.StatusList desiredStatus, int numFlashes, double speed) {
-        // if (!isFlashing) {
-        //     isFlashing = true;
-        //     flashCount = 0;
-        //     totalFlashes = numFlashes;
-        //     flashSpeed = speed;
-        //     flashStatus = desiredStatus;
-        //     ledOn = false;
-        //     flashTimer.reset();
-        //     flashTimer.start();
-        //     System.out.println("Started flashing: " + desiredStatus);
-        // }
-    
-        // If startFlashing is retriggered, reset.
-        isFlashing = true;
-        flashCount = 0;
-        totalFlashes = numFlashes;
-        flashSpeed = speed;
-        flashStatus = desiredStatus;
-        ledOn = false;
-        flashTimer.reset();
-        flashTimer.start();
-        // System.out.println("Started flashing: " + desiredStatus);
+    /** How long the pattern for a status takes to repeat, or 0 if it never changes. */
+    private static double cycleFor(Constants.Led.StatusList status) {
+        switch (status) {
+            case DISCONNECT:
+                return 20.0; // 5 %/s scroll
+            case DISABLED:
+            case IDLE:
+            case IDLERED:
+            case IDLEBLUE:
+                return 10.0; // 10 %/s mask over a 20 %/s base
+            case UNSAFE:
+                return 5.0; // 20 %/s scroll
+            case AUTONOMOUS:
+                return 4.0; // 50 %/s mask over a 25 %/s base
+            case READY:
+                return 3.0; // breathe period
+            case ODOMETRYFAULT:
+                return 0.5; // 0.25 s on, 0.25 s off
+            case LOADED:
+            case RELEASE:
+            case BLANK:
+            default:
+                return 0;
+        }
     }
 
     /**
-     * Call this every loop in robotPeriodic or teleopPeriodic
+     * How often the pattern for a status visibly changes, or 0 if it never does.
+     * Scrolling patterns move one LED every {@code 1 / (speed * length)} seconds,
+     * so the fastest scrolling layer sets the frame rate.
      */
-    public void updateFlashing() {
-        if (isFlashing) {
-            if (flashTimer.get() >= flashSpeed) {
-                flashTimer.reset();
-                ledOn = !ledOn;
-
-                if (ledOn) {
-                    setStatus(flashStatus);
-                } else {
-                    setStatus(frc.robot.Constants.Led.StatusList.BLANK);
-                    flashCount++;
-                }
-
-                if (flashCount >= totalFlashes) {
-                    isFlashing = false;
-                    setStatus(frc.robot.Constants.Led.StatusList.BLANK);
-                    // System.out.println("Flashing completed");
-                }
-            }
+    private static double framePeriodFor(Constants.Led.StatusList status) {
+        switch (status) {
+            case DISCONNECT:
+                return scrollFramePeriod(5);
+            case DISABLED:
+                return scrollFramePeriod(10);
+            case IDLE:
+            case IDLERED:
+            case IDLEBLUE:
+            case UNSAFE:
+                return scrollFramePeriod(20);
+            case AUTONOMOUS:
+                return scrollFramePeriod(50);
+            case READY:
+                return 0.02; // breathing is smooth, render it at 50 Hz
+            case ODOMETRYFAULT:
+                return 0.05; // fine enough to catch the 0.25 s blink edges
+            case LOADED:
+            case RELEASE:
+            case BLANK:
+            default:
+                return 0;
         }
     }
 
-    public boolean getFlashing() {
-        return this.isFlashing;
+    private static double scrollFramePeriod(double percentPerSecond) {
+        return 1.0 / (percentPerSecond / 100.0 * Constants.Led.kLength);
     }
 
+
     public void reset() {}
 }
 
@@ -0,0 +1,124 @@
+package frc.robot.subsystems;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.photonvision.EstimatedRobotPose;
+import org.photonvision.targeting.PhotonPipelineResult;
+
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
+
+import frc.robot.Constants;
+import frc.robot.field.FieldIndex;
+import frc.robot.io.InputLog;
+import frc.robot.telemetry.LoopProfiler;
+import frc.robot.vision.CameraConfig;
+import frc.robot.vision.VisionFusion;
+import frc.robot.vision.VisionPipeline;
+import frc.robot.vision.VisionSnapshot;
+
+/**
+ * All of the robot's PhotonVision cameras.
+ * <p>
+ * Every configured camera gets its own {@link VisionPipeline} worker that decodes frames and
+ * solves poses in the background and queues the estimates here. Once per loop,
+ * {@link #periodic()} drains the queue, orders the estimates from all cameras by capture
+ * timestamp and passes them through {@link VisionFusion}, so the pose estimator always sees
+ * measurements in time order. Adding a camera adds a worker thread, not main-loop time.
+ * <p>
+ * The same periodic refreshes a {@link VisionSnapshot} of the cameras' newest targets, which
+ * commands read instead of decoding results themselves.
+ */
+public class Vision extends SubsystemBase {
+    private static final Comparator<EstimatedRobotPose> kByTimestamp =
+        Comparator.comparingDouble(estimate -> estimate.timestampSeconds);
+
+    private final VisionPipeline[] m_pipelines;
+    private final VisionFusion m_fusion;
+
+    /* Filled by the camera workers, drained by the main loop */
+    private final ConcurrentLinkedQueue<EstimatedRobotPose> m_pending = new ConcurrentLinkedQueue<>();
+    private final List<EstimatedRobotPose> m_batch = new ArrayList<>();
+
+    private final VisionSnapshot m_snapshot;
+
+    /* Accepted and rejected estimate counts, recorded every loop for replay comparison */
+    private final InputLog m_inputLog = InputLog.getInstance();
+    private final VisionFusion.Verdict[] m_verdicts = VisionFusion.Verdict.values();
+    private final double[] m_verdictCounts = new double[m_verdicts.length];
+
+    private final LoopProfiler m_profiler = LoopProfiler.getInstance();
+    private final int m_periodicChannel = m_profiler.channel("Subsystems/Vision");
+
+    /**
+     * Constructs the subsystem and starts a worker for every camera.
+     *
+     * @param cameras    Cameras to read, the first one is the primary camera
+     * @param field      Field index used for pose estimation and gating
+     * @param drivetrain Drivetrain whose pose estimator receives the accepted estimates
+     */
+    public Vision(List<CameraConfig> cameras, FieldIndex field, CommandSwerveDrivetrain drivetrain) {
+        m_fusion = new VisionFusion(field, drivetrain);
+
+        /* The estimators need a layout, build it once from the index and share it */
+        final AprilTagFieldLayout layout = field.toLayout();
+        m_pipelines = new VisionPipeline[cameras.size()];
+        for (int i = 0; i < m_pipelines.length; ++i) {
+            m_pipelines[i] = new VisionPipeline(cameras.get(i), layout, m_pending::add);
+        }
+
+        m_snapshot = new VisionSnapshot(field.getMaxId());
+    }
+
+    @Override
+    public void periodic() {
+        EstimatedRobotPose estimate;
+        while ((estimate = m_pending.poll()) != null) {
+            m_batch.add(estimate);
+        }
+        if (!m_batch.isEmpty()) {
+            m_batch.sort(kByTimestamp);
+            for (EstimatedRobotPose pending : m_batch) {
+                m_fusion.addMeasurement(pending);
+            }
+            m_batch.clear();
+        }
+        for (int i = 0; i < m_verdicts.length; ++i) {
+            m_verdictCounts[i] = m_fusion.getCount(m_verdicts[i]);
+        }
+        m_inputLog.recordOutput("Vision/Fusion", m_verdictCounts);
+
+        m_snapshot.update(m_pipelines, Timer.getFPGATimestamp(), Constants.Vision.kTargetTimeout);
+
+        m_profiler.lap(m_periodicChannel);
+    }
+
+    /** @return Targets seen by the cameras, refreshed once per loop before commands run */
+    public VisionSnapshot getSnapshot() {
+        return m_snapshot;
+    }
+
+    /** @return Number of configured cameras */
+    public int getCameraCount() {
+        return m_pipelines.length;
+    }
+
+    /** @return The given camera's pipeline */
+    public VisionPipeline getPipeline(int camera) {
+        return m_pipelines[camera];
+    }
+
+    /** @return The newest result from the given camera, never null */
+    public PhotonPipelineResult getLatestResult(int camera) {
+        return m_pipelines[camera].getLatestResult();
+    }
+
+    /** @return The newest result from the primary camera, never null */
+    public PhotonPipelineResult getLatestResult() {
+        return getLatestResult(0);
+    }
+}
@@ -0,0 +1,106 @@
+package frc.robot.telemetry;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size, allocation-free histogram of durations in microseconds.
+ * <p>
+ * Buckets are log-linear: each power of two is split into {@value #kSubBuckets}
+ * linear buckets, giving about 12% resolution from 1 µs up to about one second.
+ * Longer durations land in the last bucket but still update {@link #getMax()}.
+ */
+public class LatencyHistogram {
+    private static final int kSubBucketBits = 3;
+    private static final int kSubBuckets = 1 << kSubBucketBits;
+    /* Highest power of two with its own buckets, 2^20 µs is about one second */
+    private static final int kMaxExponent = 20;
+    private static final int kBucketCount = (kMaxExponent - kSubBucketBits + 2) * kSubBuckets;
+
+    private final long[] m_counts = new long[kBucketCount];
+    private long m_count = 0;
+    private long m_sum = 0;
+    private long m_max = 0;
+
+    /**
+     * Records one duration.
+     *
+     * @param micros Duration in microseconds
+     */
+    public void record(long micros) {
+        if (micros < 0) {
+            micros = 0;
+        }
+        ++m_counts[bucketOf(micros)];
+        ++m_count;
+        m_sum += micros;
+        if (micros > m_max) {
+            m_max = micros;
+        }
+    }
+
+    /**
+     * Estimates a percentile of the recorded durations.
+     *
+     * @param quantile Quantile in the range [0, 1], e.g. 0.99 for p99
+     * @return The upper edge of the bucket holding the quantile in microseconds,
+     *         capped at the largest recorded value, or 0 if nothing was recorded
+     */
+    public long getPercentile(double quantile) {
+        if (m_count == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(quantile * m_count));
+        long seen = 0;
+        for (int i = 0; i < kBucketCount; ++i) {
+            seen += m_counts[i];
+            if (seen >= rank) {
+                return Math.min(upperEdgeOf(i), m_max);
+            }
+        }
+        return m_max;
+    }
+
+    /** @return Number of recorded durations */
+    public long getCount() {
+        return m_count;
+    }
+
+    /** @return Largest recorded duration in microseconds */
+    public long getMax() {
+        return m_max;
+    }
+
+    /** @return Mean recorded duration in microseconds, or 0 if nothing was recorded */
+    public double getMean() {
+        return m_count == 0 ? 0.0 : (double) m_sum / m_count;
+    }
+
+    /** Clears all recorded durations. */
+    public void reset() {
+        Arrays.fill(m_counts, 0);
+        m_count = 0;
+        m_sum = 0;
+        m_max = 0;
+    }
+
+    private static int bucketOf(long micros) {
+        if (micros < kSubBuckets) {
+            return (int) micros;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > kMaxExponent) {
+            return kBucketCount - 1;
+        }
+        final int shift = exponent - kSubBucketBits;
+        return (shift + 1) * kSubBuckets + (int) ((micros >> shift) - kSubBuckets);
+    }
+
+    private static long upperEdgeOf(int bucket) {
+        if (bucket < kSubBuckets) {
+            return bucket + 1;
+        }
+        final int shift = bucket / kSubBuckets - 1;
+        final long subBucket = bucket % kSubBuckets + kSubBuckets;
+        return (subBucket + 1) << shift;
+    }
+}
@@ -0,0 +1,227 @@
+package frc.robot.telemetry;
+
+import java.util.IdentityHashMap;
+
+import com.ctre.phoenix6.SignalLogger;
+
+import edu.wpi.first.networktables.DoubleArrayPublisher;
+import edu.wpi.first.networktables.IntegerPublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+
+/**
+ * Split-timer profiler for the main robot loop.
+ * <p>
+ * The loop is timed as a sequence of laps: {@link #beginCycle()} starts the clock, and every
+ * {@link #lap(int)} records the time since the previous lap into that channel's histogram.
+ * Laps come from three places:
+ * <ul>
+ *   <li>Subsystems call {@link #lap(int)} at the end of their {@code periodic()}.
+ *   <li>{@link #bindLap(String)} appends a lap to the default button loop, so calling it
+ *       right after binding a trigger times that trigger's poll.
+ *   <li>{@link #install(CommandScheduler)} laps after every command {@code execute()}.
+ * </ul>
+ * Whatever is left when {@link #endCycle()} runs is recorded as scheduler overhead.
+ * Recording is allocation-free; the first lap of a new command registers its channel.
+ * Every second p50/p99/max, sample counts and overrun counts are published to NetworkTables
+ * and SignalLogger. An overrun is a cycle longer than the loop period, and each one is also
+ * charged to the channel that took the most time in that cycle.
+ */
+public final class LoopProfiler {
+    private static final int kMaxChannels = 64;
+    private static final double kPublishPeriod = 1.0; // 1 s
+
+    private static LoopProfiler s_instance;
+
+    /** @return The profiler for the main robot loop */
+    public static synchronized LoopProfiler getInstance() {
+        if (s_instance == null) {
+            s_instance = new LoopProfiler(TimedRobot.kDefaultPeriod);
+        }
+        return s_instance;
+    }
+
+    private final long m_loopBudgetMicros;
+    private final NetworkTable m_table = NetworkTableInstance.getDefault().getTable("Profiler");
+
+    private final String[] m_names = new String[kMaxChannels];
+    private final String[] m_logNames = new String[kMaxChannels];
+    private final LatencyHistogram[] m_histograms = new LatencyHistogram[kMaxChannels];
+    private final DoubleArrayPublisher[] m_publishers = new DoubleArrayPublisher[kMaxChannels];
+    private final long[] m_overruns = new long[kMaxChannels];
+    private int m_channelCount = 0;
+
+    /* Time spent in each channel during the current cycle, and which channels were touched */
+    private final long[] m_cycleMicros = new long[kMaxChannels];
+    private final int[] m_touched = new int[kMaxChannels];
+    private int m_touchedCount = 0;
+
+    private final IdentityHashMap<Command, Integer> m_commandChannels = new IdentityHashMap<>();
+
+    private final int m_otherChannel;
+    private final int m_schedulerChannel;
+    private final int m_loopChannel;
+
+    private final IntegerPublisher m_overrunPublisher = m_table.getIntegerTopic("LoopOverruns").publish();
+    private final double[] m_publishValues = new double[5];
+    private long m_totalOverruns = 0;
+
+    private long m_cycleStartNanos;
+    private long m_markNanos;
+    private long m_lastPublishNanos = System.nanoTime();
+    private boolean m_inCycle = false;
+
+    private LoopProfiler(double loopPeriodSeconds) {
+        m_loopBudgetMicros = (long) (loopPeriodSeconds * 1e6);
+        m_otherChannel = channel("Other");
+        m_schedulerChannel = channel("Scheduler");
+        m_loopChannel = channel("Loop");
+    }
+
+    /**
+     * Gets or creates the channel with the given name. Channels past the fixed
+     * capacity share the "Other" channel.
+     *
+     * @param name Name of the channel, e.g. "Subsystems/Drivetrain"
+     * @return Channel id to pass to {@link #lap(int)}
+     */
+    public int channel(String name) {
+        for (int i = 0; i < m_channelCount; ++i) {
+            if (m_names[i].equals(name)) {
+                return i;
+            }
+        }
+        if (m_channelCount == kMaxChannels) {
+            return m_otherChannel;
+        }
+        final int id = m_channelCount++;
+        m_names[id] = name;
+        m_logNames[id] = "Profiler/" + name;
+        m_histograms[id] = new LatencyHistogram();
+        m_publishers[id] = m_table.getDoubleArrayTopic(name).publish();
+        return id;
+    }
+
+    /**
+     * Hooks the profiler into the scheduler so each command's execute is timed.
+     * Call this after all triggers have been bound.
+     *
+     * @param scheduler The scheduler to profile
+     */
+    public void install(CommandScheduler scheduler) {
+        /* Runs after every trigger poll, so the first command lap only covers that command */
+        scheduler.getDefaultButtonLoop().bind(this::mark);
+        scheduler.onCommandExecute(command -> lap(commandChannel(command)));
+    }
+
+    /**
+     * Appends a lap to the default button loop. Call this right after binding a trigger
+     * to time that trigger's poll under the given name.
+     *
+     * @param name Name of the channel
+     */
+    public void bindLap(String name) {
+        final int id = channel(name);
+        CommandScheduler.getInstance().getDefaultButtonLoop().bind(() -> lap(id));
+    }
+
+    /** Starts timing a loop cycle. */
+    public void beginCycle() {
+        m_cycleStartNanos = System.nanoTime();
+        m_markNanos = m_cycleStartNanos;
+        m_touchedCount = 0;
+        m_inCycle = true;
+    }
+
+    /**
+     * Records the time since the previous lap into the given channel.
+     *
+     * @param channel Channel id from {@link #channel(String)}
+     */
+    public void lap(int channel) {
+        final long now = System.nanoTime();
+        if (m_inCycle) {
+            final long micros = (now - m_markNanos) / 1000;
+            m_histograms[channel].record(micros);
+            if (m_cycleMicros[channel] == 0) {
+                m_touched[m_touchedCount++] = channel;
+            }
+            /* +1 so a sub-microsecond lap still marks the channel as touched */
+            m_cycleMicros[channel] += micros + 1;
+        }
+        m_markNanos = now;
+    }
+
+    /** Restarts the lap clock without recording anything. */
+    public void mark() {
+        m_markNanos = System.nanoTime();
+    }
+
+    /** Finishes timing a loop cycle, and publishes once per publish period. */
+    public void endCycle() {
+        lap(m_schedulerChannel);
+        m_inCycle = false;
+
+        final long now = m_markNanos;
+        final long cycleMicros = (now - m_cycleStartNanos) / 1000;
+        m_histograms[m_loopChannel].record(cycleMicros);
+
+        if (cycleMicros > m_loopBudgetMicros) {
+            ++m_totalOverruns;
+            ++m_overruns[m_loopChannel];
+
+            /* Blame the channel that took the most time this cycle */
+            int worst = m_schedulerChannel;
+            for (int i = 0; i < m_touchedCount; ++i) {
+                if (m_cycleMicros[m_touched[i]] > m_cycleMicros[worst]) {
+                    worst = m_touched[i];
+                }
+            }
+            ++m_overruns[worst];
+        }
+        for (int i = 0; i < m_touchedCount; ++i) {
+            m_cycleMicros[m_touched[i]] = 0;
+        }
+
+        if ((now - m_lastPublishNanos) * 1e-9 >= kPublishPeriod) {
+            m_lastPublishNanos = now;
+            publish();
+        }
+    }
+
+    private int commandChannel(Command command) {
+        final Integer id = m_commandChannels.get(command);
+        if (id != null) {
+            return id;
+        }
+        final int newId = channel("Commands/" + command.getName());
+        m_commandChannels.put(command, newId);
+        return newId;
+    }
+
+    /** Publish [p50 ms, p99 ms, max ms, samples, overruns] per channel, then start a new window. */
+    private void publish() {
+        for (int i = 0; i < m_channelCount; ++i) {
+            final LatencyHistogram histogram = m_histograms[i];
+            if (histogram.getCount() == 0 && m_overruns[i] == 0) {
+                continue;
+            }
+            m_publishValues[0] = histogram.getPercentile(0.50) / 1000.0;
+            m_publishValues[1] = histogram.getPercentile(0.99) / 1000.0;
+            m_publishValues[2] = histogram.getMax() / 1000.0;
+            m_publishValues[3] = histogram.getCount();
+            m_publishValues[4] = m_overruns[i];
+
+            m_publishers[i].set(m_publishValues);
+            SignalLogger.writeDoubleArray(m_logNames[i], m_publishValues);
+
+            histogram.reset();
+            m_overruns[i] = 0;
+        }
+        m_overrunPublisher.set(m_totalOverruns);
+        SignalLogger.writeInteger("Profiler/LoopOverruns", m_totalOverruns);
+    }
+}
@@ -0,0 +1,162 @@
+package frc.robot.telemetry;
+
+import java.util.Arrays;
+
+import com.ctre.phoenix6.SignalLogger;
+import com.ctre.phoenix6.swerve.SwerveDrivetrain.SwerveDriveState;
+
+import edu.wpi.first.networktables.BooleanPublisher;
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.Alert;
+import edu.wpi.first.wpilibj.Alert.AlertType;
+
+import frc.robot.Constants;
+
+/**
+ * Watches the health of the Phoenix odometry thread.
+ * <p>
+ * {@link #sample(SwerveDriveState)} runs on the odometry thread and only stores the
+ * odometry period and DAQ counters. {@link #update(double)} runs on the main loop and
+ * computes rolling percentiles of the period and the DAQ failure rate since the last
+ * update. If the jitter, median period or failure rate pass the thresholds in
+ * {@link Constants.OdometryHealth}, the monitor reports unhealthy and raises an alert
+ * until the odometry has stayed healthy for the hold time. Under match load this is
+ * the first sign of CAN bus saturation.
+ */
+public class OdometryHealthMonitor {
+    private final double m_nominalPeriod;
+
+    /* Written by the odometry thread under the monitor lock */
+    private final double[] m_periods = new double[Constants.OdometryHealth.kWindowSize];
+    private int m_periodCount = 0;
+    private int m_periodIndex = 0;
+    private int m_successfulDaqs = 0;
+    private int m_failedDaqs = 0;
+
+    /* Main-loop state */
+    private final double[] m_sortedPeriods = new double[Constants.OdometryHealth.kWindowSize];
+    private int m_lastSuccessfulDaqs = 0;
+    private int m_lastFailedDaqs = 0;
+    private double m_lastUpdateTime = Double.NEGATIVE_INFINITY;
+    private double m_lastFaultTime = Double.NEGATIVE_INFINITY;
+
+    private double m_periodP50 = 0.0;
+    private double m_periodP99 = 0.0;
+    private double m_failureRate = 0.0;
+    private boolean m_healthy = true;
+
+    private final Alert m_alert = new Alert("Odometry degraded, check CAN bus utilization", AlertType.kWarning);
+
+    private final NetworkTable m_table = NetworkTableInstance.getDefault().getTable("OdometryHealth");
+    private final DoublePublisher m_periodP50Pub = m_table.getDoubleTopic("PeriodP50").publish();
+    private final DoublePublisher m_periodP99Pub = m_table.getDoubleTopic("PeriodP99").publish();
+    private final DoublePublisher m_jitterPub = m_table.getDoubleTopic("Jitter").publish();
+    private final DoublePublisher m_failureRatePub = m_table.getDoubleTopic("FailureRate").publish();
+    private final BooleanPublisher m_healthyPub = m_table.getBooleanTopic("Healthy").publish();
+
+    /**
+     * Constructs a monitor for an odometry thread running at the given frequency.
+     *
+     * @param nominalFrequency Frequency the odometry thread is configured to run at in Hz
+     */
+    public OdometryHealthMonitor(double nominalFrequency) {
+        m_nominalPeriod = 1.0 / nominalFrequency;
+    }
+
+    /**
+     * Records one odometry sample. Called from the odometry thread.
+     *
+     * @param state The latest drive state
+     */
+    public synchronized void sample(SwerveDriveState state) {
+        m_periods[m_periodIndex] = state.OdometryPeriod;
+        m_periodIndex = (m_periodIndex + 1) % m_periods.length;
+        if (m_periodCount < m_periods.length) {
+            ++m_periodCount;
+        }
+        m_successfulDaqs = state.SuccessfulDaqs;
+        m_failedDaqs = state.FailedDaqs;
+    }
+
+    /**
+     * Re-evaluates the health of the odometry thread, at most once per evaluation period.
+     * Called from the main loop.
+     *
+     * @param now Current time in seconds
+     */
+    public void update(double now) {
+        if (now - m_lastUpdateTime < Constants.OdometryHealth.kEvaluationPeriod) {
+            return;
+        }
+        m_lastUpdateTime = now;
+
+        final int count;
+        final int successfulDaqs;
+        final int failedDaqs;
+        synchronized (this) {
+            count = m_periodCount;
+            System.arraycopy(m_periods, 0, m_sortedPeriods, 0, count);
+            successfulDaqs = m_successfulDaqs;
+            failedDaqs = m_failedDaqs;
+        }
+        if (count == 0) {
+            return;
+        }
+
+        Arrays.sort(m_sortedPeriods, 0, count);
+        m_periodP50 = m_sortedPeriods[(int) (0.50 * (count - 1))];
+        m_periodP99 = m_sortedPeriods[(int) Math.ceil(0.99 * (count - 1))];
+
+        final int successfulDelta = successfulDaqs - m_lastSuccessfulDaqs;
+        final int failedDelta = failedDaqs - m_lastFailedDaqs;
+        m_lastSuccessfulDaqs = successfulDaqs;
+        m_lastFailedDaqs = failedDaqs;
+        final int totalDelta = successfulDelta + failedDelta;
+        m_failureRate = totalDelta > 0 ? (double) failedDelta / totalDelta : 0.0;
+
+        final double jitter = m_periodP99 - m_periodP50;
+        final boolean faulted =
+            jitter > Constants.OdometryHealth.kMaxJitter ||
+            m_periodP50 > m_nominalPeriod * Constants.OdometryHealth.kMaxPeriodRatio ||
+            m_failureRate > Constants.OdometryHealth.kMaxFailureRate;
+        if (faulted) {
+            m_lastFaultTime = now;
+        }
+        /* Stay unhealthy for a while so a flapping bus doesn't flicker the alert */
+        m_healthy = now - m_lastFaultTime > Constants.OdometryHealth.kFaultHoldTime;
+        m_alert.set(!m_healthy);
+
+        m_periodP50Pub.set(m_periodP50);
+        m_periodP99Pub.set(m_periodP99);
+        m_jitterPub.set(jitter);
+        m_failureRatePub.set(m_failureRate);
+        m_healthyPub.set(m_healthy);
+
+        SignalLogger.writeDouble("OdometryHealth/PeriodP50", m_periodP50, "seconds");
+        SignalLogger.writeDouble("OdometryHealth/PeriodP99", m_periodP99, "seconds");
+        SignalLogger.writeDouble("OdometryHealth/FailureRate", m_failureRate);
+        SignalLogger.writeBoolean("OdometryHealth/Healthy", m_healthy);
+    }
+
+    /** @return Whether the odometry thread is currently within its health thresholds */
+    public boolean isHealthy() {
+        return m_healthy;
+    }
+
+    /** @return Median odometry period over the rolling window in seconds */
+    public double getPeriodP50() {
+        return m_periodP50;
+    }
+
+    /** @return 99th percentile odometry period over the rolling window in seconds */
+    public double getPeriodP99() {
+        return m_periodP99;
+    }
+
+    /** @return Fraction of failed DAQs since the previous evaluation */
+    public double getFailureRate() {
+        return m_failureRate;
+    }
+}
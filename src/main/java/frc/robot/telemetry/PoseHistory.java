@@ -0,0 +1,162 @@
+package frc.robot.telemetry;
+
+import com.ctre.phoenix6.swerve.SwerveDrivetrain.SwerveDriveState;
+
+import edu.wpi.first.math.MathUtil;
+
+/**
+ * Fixed-capacity history of drivetrain poses and field-relative velocities.
+ * <p>
+ * Samples are stored in parallel primitive arrays used as a ring, filled from the odometry
+ * thread through {@link #add(SwerveDriveState)}. {@link #sample(double, double[])} answers
+ * "where was the robot at time t" with a binary search and linear interpolation between
+ * the two neighboring samples, wrapping the heading the short way around. Neither inserts
+ * nor queries allocate.
+ * <p>
+ * Timestamps are in the Phoenix timebase of {@link SwerveDriveState#Timestamp}. The writer
+ * and readers are on different threads, so all access is synchronized.
+ */
+public class PoseHistory {
+    /* Indices into the output of sample() */
+    public static final int kX = 0;
+    public static final int kY = 1;
+    public static final int kTheta = 2;
+    public static final int kVx = 3;
+    public static final int kVy = 4;
+    public static final int kOmega = 5;
+    public static final int kSampleSize = 6;
+
+    private final double[] m_timestamps;
+    private final double[] m_x;
+    private final double[] m_y;
+    private final double[] m_theta;
+    private final double[] m_vx;
+    private final double[] m_vy;
+    private final double[] m_omega;
+
+    /* Physical index of the next write, and number of valid samples */
+    private int m_next = 0;
+    private int m_count = 0;
+
+    /**
+     * Constructs an empty history.
+     *
+     * @param capacity Number of samples to keep
+     */
+    public PoseHistory(int capacity) {
+        m_timestamps = new double[capacity];
+        m_x = new double[capacity];
+        m_y = new double[capacity];
+        m_theta = new double[capacity];
+        m_vx = new double[capacity];
+        m_vy = new double[capacity];
+        m_omega = new double[capacity];
+    }
+
+    /**
+     * Appends a drive state, overwriting the oldest sample once full. States that are not
+     * newer than the latest sample are ignored. Called from the odometry thread.
+     *
+     * @param state The latest drive state
+     */
+    public synchronized void add(SwerveDriveState state) {
+        if (m_count > 0 && state.Timestamp <= m_timestamps[physical(m_count - 1)]) {
+            return;
+        }
+
+        final double theta = state.Pose.getRotation().getRadians();
+        final double cos = Math.cos(theta);
+        final double sin = Math.sin(theta);
+
+        m_timestamps[m_next] = state.Timestamp;
+        m_x[m_next] = state.Pose.getX();
+        m_y[m_next] = state.Pose.getY();
+        m_theta[m_next] = theta;
+        /* Drive state speeds are robot-relative, store them field-relative */
+        m_vx[m_next] = state.Speeds.vxMetersPerSecond * cos - state.Speeds.vyMetersPerSecond * sin;
+        m_vy[m_next] = state.Speeds.vxMetersPerSecond * sin + state.Speeds.vyMetersPerSecond * cos;
+        m_omega[m_next] = state.Speeds.omegaRadiansPerSecond;
+
+        m_next = (m_next + 1) % m_timestamps.length;
+        if (m_count < m_timestamps.length) {
+            ++m_count;
+        }
+    }
+
+    /**
+     * Interpolates the robot state at a time. Times outside the history are clamped to the
+     * oldest or newest sample.
+     *
+     * @param timestamp Time to sample in Phoenix seconds
+     * @param out       Receives [x, y, theta, vx, vy, omega], indexed by the k constants
+     * @return Whether the history held any samples; {@code out} is untouched if not
+     */
+    public synchronized boolean sample(double timestamp, double[] out) {
+        if (m_count == 0) {
+            return false;
+        }
+
+        /* Find the last sample at or before the timestamp */
+        int low = 0;
+        int high = m_count - 1;
+        if (timestamp <= m_timestamps[physical(0)]) {
+            high = 0;
+        } else {
+            while (low < high) {
+                final int mid = (low + high + 1) >>> 1;
+                if (m_timestamps[physical(mid)] <= timestamp) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+        }
+
+        final int a = physical(high);
+        if (high == m_count - 1 || timestamp <= m_timestamps[a]) {
+            copy(a, out);
+            return true;
+        }
+
+        final int b = physical(high + 1);
+        final double t = (timestamp - m_timestamps[a]) / (m_timestamps[b] - m_timestamps[a]);
+        out[kX] = m_x[a] + (m_x[b] - m_x[a]) * t;
+        out[kY] = m_y[a] + (m_y[b] - m_y[a]) * t;
+        out[kTheta] = MathUtil.angleModulus(m_theta[a] + MathUtil.angleModulus(m_theta[b] - m_theta[a]) * t);
+        out[kVx] = m_vx[a] + (m_vx[b] - m_vx[a]) * t;
+        out[kVy] = m_vy[a] + (m_vy[b] - m_vy[a]) * t;
+        out[kOmega] = m_omega[a] + (m_omega[b] - m_omega[a]) * t;
+        return true;
+    }
+
+    /** @return Timestamp of the newest sample, or NaN if the history is empty */
+    public synchronized double getLatestTimestamp() {
+        return m_count > 0 ? m_timestamps[physical(m_count - 1)] : Double.NaN;
+    }
+
+    /** @return Number of samples held */
+    public synchronized int size() {
+        return m_count;
+    }
+
+    /** Drops every sample, for example after the pose is reset. */
+    public synchronized void clear() {
+        m_next = 0;
+        m_count = 0;
+    }
+
+    /** Maps a logical index, 0 being the oldest sample, to an array index. */
+    private int physical(int logical) {
+        final int capacity = m_timestamps.length;
+        return (m_next - m_count + logical + capacity) % capacity;
+    }
+
+    private void copy(int index, double[] out) {
+        out[kX] = m_x[index];
+        out[kY] = m_y[index];
+        out[kTheta] = m_theta[index];
+        out[kVx] = m_vx[index];
+        out[kVy] = m_vy[index];
+        out[kOmega] = m_omega[index];
+    }
+}
@@ -0,0 +1,103 @@
+package frc.robot.telemetry;
+
+/**
+ * Decides whether a topic should be re-published, based on a maximum publish rate
+ * and a change threshold.
+ * <p>
+ * A value only passes the gate if at least {@code 1 / maxRateHz} seconds have passed
+ * since the last published value <em>and</em> at least one element moved by more than
+ * the epsilon. Unchanged or sub-threshold values are never re-serialized.
+ */
+public class PublishGate {
+    /**
+     * Publishing budget for a single topic.
+     *
+     * @param maxRateHz Maximum publish rate in Hz, or 0 for no rate limit
+     * @param epsilon   Minimum change of any element that counts as a new value,
+     *                  or 0 to publish every rate-limited sample
+     */
+    public static record Budget(double maxRateHz, double epsilon) {}
+
+    private final double m_minPeriod;
+    private final double m_epsilon;
+    private final double[] m_last;
+
+    private double m_lastPublishTime = Double.NEGATIVE_INFINITY;
+    private boolean m_hasPublished = false;
+    private long m_suppressed = 0;
+
+    /**
+     * Constructs a gate for a topic of fixed width.
+     *
+     * @param budget The rate and change budget of the topic
+     * @param width  Number of doubles that make up one value of the topic
+     */
+    public PublishGate(Budget budget, int width) {
+        m_minPeriod = budget.maxRateHz() > 0 ? 1.0 / budget.maxRateHz() : 0.0;
+        m_epsilon = budget.epsilon();
+        m_last = new double[width];
+    }
+
+    /**
+     * Checks a value against the gate. If it passes, the value is remembered as the
+     * last published value and the caller is expected to publish it.
+     *
+     * @param timestamp Time of the value in seconds
+     * @param values    Array holding the value
+     * @param offset    Index of the first element of the value in {@code values}
+     * @return true if the value should be published
+     */
+    public boolean tryPass(double timestamp, double[] values, int offset) {
+        if (m_hasPublished) {
+            if (timestamp - m_lastPublishTime < m_minPeriod || !hasChanged(values, offset)) {
+                ++m_suppressed;
+                return false;
+            }
+        }
+        System.arraycopy(values, offset, m_last, 0, m_last.length);
+        m_lastPublishTime = timestamp;
+        m_hasPublished = true;
+        return true;
+    }
+
+    /**
+     * Checks a single-element value against the gate.
+     *
+     * @see #tryPass(double, double[], int)
+     */
+    public boolean tryPass(double timestamp, double value) {
+        if (m_hasPublished) {
+            if (timestamp - m_lastPublishTime < m_minPeriod || !exceedsEpsilon(value - m_last[0])) {
+                ++m_suppressed;
+                return false;
+            }
+        }
+        m_last[0] = value;
+        m_lastPublishTime = timestamp;
+        m_hasPublished = true;
+        return true;
+    }
+
+    /** Forces the next value through the gate regardless of rate or change. */
+    public void reset() {
+        m_hasPublished = false;
+    }
+
+    /** @return Number of values the gate has held back */
+    public long getSuppressedCount() {
+        return m_suppressed;
+    }
+
+    private boolean hasChanged(double[] values, int offset) {
+        for (int i = 0; i < m_last.length; ++i) {
+            if (exceedsEpsilon(values[offset + i] - m_last[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean exceedsEpsilon(double delta) {
+        return m_epsilon <= 0 || Math.abs(delta) > m_epsilon;
+    }
+}
@@ -0,0 +1,336 @@
+package frc.robot.telemetry;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.ctre.phoenix6.swerve.SwerveDrivetrain.SwerveDriveState;
+
+import edu.wpi.first.networktables.IntegerPublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.DriverStation;
+
+import frc.robot.Constants;
+
+/**
+ * Records every {@link SwerveDriveState} at odometry rate into segment files on a USB stick.
+ * <p>
+ * {@link #record(SwerveDriveState)} runs on the Phoenix odometry thread and only copies the
+ * state into a {@link SwerveStateRing}, so it never allocates and never blocks. A writer
+ * thread drains the ring into the current segment with one fixed-layout record per state.
+ * <p>
+ * The segments are a fixed pool of {@link Constants.StateRecorder#kMaxSegments} files, each
+ * created once at its full {@link Constants.StateRecorder#kSegmentBytes} and mapped into
+ * memory once, so the file system never allocates clusters while recording. When a segment is
+ * full the writer moves on to the next file in the pool and overwrites it in place, first
+ * setting its record count to zero so the old records are no longer valid. Files are never
+ * deleted; the segment index in each header orders them, and numbering continues across runs.
+ * <p>
+ * A separate flusher thread forces the newly written range of each segment to disk once per
+ * {@link Constants.StateRecorder#kFlushPeriod}, so a slow disk only delays flushing. If the
+ * writer falls behind anyway, the ring fills and new states are dropped and counted, and the
+ * odometry thread is never held up.
+ * <p>
+ * Recording only starts when a USB stick is mounted, the same check {@code DataLogManager}
+ * relies on, so it can never fill the roboRIO's internal flash.
+ * <p>
+ * Segment layout, little-endian: a {@value #kHeaderBytes} byte header (magic {@code SREC},
+ * version, header size, record size, doubles per record, module count, segment index, number
+ * of valid records, creation time in Unix milliseconds), then records of
+ * {@link SwerveStateRing#kSlotSize} doubles in the {@link SwerveStateRing} slot layout.
+ */
+public class StateRecorder {
+    private static final int kMagic = 0x43455253; // "SREC"
+    private static final int kVersion = 1;
+    private static final int kHeaderBytes = 64;
+    private static final int kRecordBytes = SwerveStateRing.kSlotSize * Double.BYTES;
+
+    /* Header layout */
+    private static final int kMagicOffset = 0;
+    private static final int kVersionOffset = 4;
+    private static final int kHeaderBytesOffset = 8;
+    private static final int kRecordBytesOffset = 12;
+    private static final int kRecordSizeOffset = 16;
+    private static final int kModuleCountOffset = 20;
+    private static final int kSegmentIndexOffset = 24;
+    private static final int kRecordCountOffset = 32;
+    private static final int kCreatedOffset = 40;
+
+    private static final String kFilePrefix = "state-";
+    private static final String kFileSuffix = ".bin";
+
+    /** One use of a pool file, from the time the writer starts it until it is full. */
+    private static class Segment {
+        final long index;
+        final MappedByteBuffer buffer;
+        /* Written by the writer thread */
+        int count = 0;
+        volatile int committedBytes = kHeaderBytes;
+        /* Written by the flusher thread */
+        int flushedBytes = 0;
+
+        Segment(long index, MappedByteBuffer buffer) {
+            this.index = index;
+            this.buffer = buffer;
+        }
+
+        /** Forces everything committed since the last flush to disk. Flusher thread only. */
+        void flush() {
+            final int committed = committedBytes;
+            if (committed > flushedBytes) {
+                buffer.force(flushedBytes, committed - flushedBytes);
+                /* The record count lives in the header */
+                if (flushedBytes > 0) {
+                    buffer.force(0, kHeaderBytes);
+                }
+                flushedBytes = committed;
+            }
+        }
+    }
+
+    private final File m_mount;
+    private final File m_directory;
+    private final int m_recordsPerSegment;
+    private final SwerveStateRing m_ring = new SwerveStateRing(Constants.StateRecorder.kRingCapacity);
+
+    /* Writer thread state */
+    private final double[] m_sample = new double[SwerveStateRing.kSlotSize];
+    private final MappedByteBuffer[] m_pool = new MappedByteBuffer[Constants.StateRecorder.kMaxSegments];
+    private int m_nextSlot = 0;
+    private long m_nextIndex = 0;
+    private Segment m_current;
+    private long m_recordCount = 0;
+
+    /* Handed from the writer to the flusher */
+    private volatile Segment m_flushSegment = null;
+    private final ConcurrentLinkedQueue<Segment> m_fullSegments = new ConcurrentLinkedQueue<>();
+
+    private volatile boolean m_failed = false;
+
+    private final NetworkTable m_table = NetworkTableInstance.getDefault().getTable("StateRecorder");
+    private final IntegerPublisher m_recordsPub = m_table.getIntegerTopic("Records").publish();
+    private final IntegerPublisher m_droppedPub = m_table.getIntegerTopic("Dropped").publish();
+    private final IntegerPublisher m_segmentPub = m_table.getIntegerTopic("Segment").publish();
+
+    /**
+     * Constructs the recorder and starts its writer and flusher threads.
+     *
+     * @param mount     Mount point of the USB stick, nothing is recorded unless a stick is mounted there
+     * @param directory Directory for the segment files on the stick, created if missing
+     */
+    public StateRecorder(File mount, String directory) {
+        m_mount = mount;
+        m_directory = new File(mount, directory);
+        m_recordsPerSegment = (Constants.StateRecorder.kSegmentBytes - kHeaderBytes) / kRecordBytes;
+
+        final Thread writer = new Thread(this::writeLoop, "State Recorder");
+        writer.setDaemon(true);
+        writer.setPriority(Thread.MIN_PRIORITY);
+        writer.start();
+
+        final Thread flusher = new Thread(this::flushLoop, "State Recorder Flush");
+        flusher.setDaemon(true);
+        flusher.setPriority(Thread.MIN_PRIORITY);
+        flusher.start();
+    }
+
+    /**
+     * Accepts a state from the odometry thread. Only copies it into the ring.
+     * Only one thread may call this.
+     */
+    public void record(SwerveDriveState state) {
+        if (!m_failed) {
+            m_ring.offer(state);
+        }
+    }
+
+    /** @return Whether the recorder stopped, for lack of a USB stick or after a write failed */
+    public boolean hasFailed() {
+        return m_failed;
+    }
+
+    private void writeLoop() {
+        try {
+            checkMounted(m_mount);
+            openPool();
+        } catch (IOException e) {
+            fail(e);
+            return;
+        }
+        m_current = startSegment();
+        m_flushSegment = m_current;
+
+        final long drainPeriodMs = Math.max(1, Math.round(Constants.StateRecorder.kDrainPeriod * 1000.0));
+        while (!Thread.currentThread().isInterrupted()) {
+            if (drain()) {
+                m_recordsPub.set(m_recordCount);
+                m_droppedPub.set(m_ring.getDroppedCount());
+            }
+
+            try {
+                Thread.sleep(drainPeriodMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Writes everything in the ring, rotating segments as they fill. Writer thread only.
+     *
+     * @return Whether anything was written
+     */
+    private boolean drain() {
+        boolean wrote = false;
+        while (m_ring.poll(m_sample)) {
+            if (m_current.count == m_recordsPerSegment) {
+                rotate();
+            }
+            final MappedByteBuffer buffer = m_current.buffer;
+            final int offset = kHeaderBytes + m_current.count * kRecordBytes;
+            for (int i = 0; i < SwerveStateRing.kSlotSize; ++i) {
+                buffer.putDouble(offset + i * Double.BYTES, m_sample[i]);
+            }
+            ++m_current.count;
+            ++m_recordCount;
+            wrote = true;
+        }
+        if (wrote) {
+            commit(m_current);
+        }
+        return wrote;
+    }
+
+    /** Publishes a segment's records to its header and to the flusher. */
+    private static void commit(Segment segment) {
+        segment.buffer.putLong(kRecordCountOffset, segment.count);
+        segment.committedBytes = kHeaderBytes + segment.count * kRecordBytes;
+    }
+
+    /** Hands the full segment to the flusher, and starts the next one in the pool. */
+    private void rotate() {
+        final Segment full = m_current;
+        commit(full);
+        m_fullSegments.add(full);
+
+        m_current = startSegment();
+        m_flushSegment = m_current;
+    }
+
+    private void flushLoop() {
+        final long flushPeriodMs = Math.max(1, Math.round(Constants.StateRecorder.kFlushPeriod * 1000.0));
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(flushPeriodMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            try {
+                Segment full;
+                while ((full = m_fullSegments.poll()) != null) {
+                    full.flush();
+                }
+                final Segment current = m_flushSegment;
+                if (current != null) {
+                    current.flush();
+                }
+            } catch (UncheckedIOException e) {
+                DriverStation.reportWarning("State recorder failed to flush: " + e.getMessage(), false);
+            }
+        }
+    }
+
+    /**
+     * Checks that a USB stick is mounted. On the roboRIO the mount point only resolves to a
+     * mounted file system while a stick is plugged in; otherwise it is a plain directory on
+     * the internal flash.
+     */
+    private static void checkMounted(File mount) throws IOException {
+        final Path realMount;
+        try {
+            realMount = mount.toPath().toRealPath();
+        } catch (IOException e) {
+            throw new IOException("No USB stick mounted at " + mount);
+        }
+
+        boolean mounted = false;
+        for (String line : Files.readAllLines(Paths.get("/proc/mounts"), StandardCharsets.UTF_8)) {
+            final String[] fields = line.split(" ");
+            if (fields.length > 1 && realMount.equals(Paths.get(fields[1]))) {
+                mounted = true;
+                break;
+            }
+        }
+        if (!mounted || !Files.isWritable(realMount)) {
+            throw new IOException("No writable USB stick mounted at " + mount);
+        }
+    }
+
+    /**
+     * Creates any missing pool files at full length and maps every one of them. Numbering
+     * continues after the newest segment left by earlier runs, in the file after it.
+     */
+    private void openPool() throws IOException {
+        if (!m_directory.isDirectory() && !m_directory.mkdirs()) {
+            throw new IOException("Cannot create " + m_directory);
+        }
+
+        long newestIndex = -1;
+        for (int slot = 0; slot < m_pool.length; ++slot) {
+            final File file = new File(m_directory, String.format("%s%03d%s", kFilePrefix, slot, kFileSuffix));
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                if (raf.length() != Constants.StateRecorder.kSegmentBytes) {
+                    raf.setLength(Constants.StateRecorder.kSegmentBytes);
+                }
+                /* The mapping stays valid after the channel is closed */
+                m_pool[slot] = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, Constants.StateRecorder.kSegmentBytes);
+            }
+            m_pool[slot].order(ByteOrder.LITTLE_ENDIAN);
+
+            final MappedByteBuffer buffer = m_pool[slot];
+            if (buffer.getInt(kMagicOffset) == kMagic && buffer.getInt(kVersionOffset) == kVersion &&
+                buffer.getLong(kSegmentIndexOffset) > newestIndex) {
+                newestIndex = buffer.getLong(kSegmentIndexOffset);
+                m_nextSlot = (slot + 1) % m_pool.length;
+            }
+        }
+        m_nextIndex = newestIndex + 1;
+    }
+
+    /** Takes over the next pool file for a new segment, invalidating what it held. */
+    private Segment startSegment() {
+        final MappedByteBuffer buffer = m_pool[m_nextSlot];
+        m_nextSlot = (m_nextSlot + 1) % m_pool.length;
+        final long index = m_nextIndex++;
+
+        /* Drop the old records before anything else changes */
+        buffer.putLong(kRecordCountOffset, 0);
+        buffer.putInt(kMagicOffset, kMagic);
+        buffer.putInt(kVersionOffset, kVersion);
+        buffer.putInt(kHeaderBytesOffset, kHeaderBytes);
+        buffer.putInt(kRecordBytesOffset, kRecordBytes);
+        buffer.putInt(kRecordSizeOffset, SwerveStateRing.kSlotSize);
+        buffer.putInt(kModuleCountOffset, SwerveStateRing.kModuleCount);
+        buffer.putLong(kSegmentIndexOffset, index);
+        buffer.putLong(kCreatedOffset, System.currentTimeMillis());
+
+        m_segmentPub.set(index);
+        return new Segment(index, buffer);
+    }
+
+    private void fail(IOException e) {
+        m_failed = true;
+        DriverStation.reportWarning("State recorder stopped: " + e.getMessage(), false);
+    }
+}
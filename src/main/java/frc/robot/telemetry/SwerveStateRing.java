@@ -0,0 +1,156 @@
+package frc.robot.telemetry;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ctre.phoenix6.swerve.SwerveDrivetrain.SwerveDriveState;
+
+/**
+ * Lock-free single-producer/single-consumer ring of {@link SwerveDriveState} samples.
+ * <p>
+ * Each slot is a fixed run of primitives inside one preallocated {@code double[]}, so
+ * {@link #offer(SwerveDriveState)} never allocates and never blocks. It is intended to
+ * be called from the Phoenix odometry thread, with exactly one other thread calling
+ * {@link #poll(double[])}. When the ring is full the new sample is dropped rather than
+ * overwriting a slot the consumer may be reading.
+ */
+public class SwerveStateRing {
+    public static final int kModuleCount = 4;
+
+    /* Slot layout, all units SI (meters, radians, seconds) */
+    public static final int kTimestamp = 0;
+    public static final int kOdometryPeriod = 1;
+    public static final int kPoseX = 2;
+    public static final int kPoseY = 3;
+    public static final int kPoseRotation = 4;
+    public static final int kSpeedsVx = 5;
+    public static final int kSpeedsVy = 6;
+    public static final int kSpeedsOmega = 7;
+    public static final int kRawHeading = 8;
+    public static final int kSuccessfulDaqs = 9;
+    public static final int kFailedDaqs = 10;
+    /* [angle, speed] per module */
+    public static final int kModuleStates = 11;
+    /* [angle, speed] per module */
+    public static final int kModuleTargets = kModuleStates + 2 * kModuleCount;
+    /* [angle, distance] per module */
+    public static final int kModulePositions = kModuleTargets + 2 * kModuleCount;
+    public static final int kSlotSize = kModulePositions + 2 * kModuleCount;
+
+    private final int m_capacity;
+    private final int m_mask;
+    private final double[] m_slots;
+
+    /* Next sequence number to write, only advanced by the producer */
+    private final AtomicLong m_head = new AtomicLong();
+    /* Next sequence number to read, only advanced by the consumer */
+    private final AtomicLong m_tail = new AtomicLong();
+
+    /* Producer-side statistics */
+    private final AtomicLong m_overflows = new AtomicLong();
+    private final AtomicLong m_dropped = new AtomicLong();
+    private boolean m_overflowing = false;
+
+    /**
+     * Constructs a ring with the given number of slots.
+     *
+     * @param capacity Number of samples the ring can hold, must be a power of two
+     */
+    public SwerveStateRing(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Ring capacity must be a power of two, got " + capacity);
+        }
+        m_capacity = capacity;
+        m_mask = capacity - 1;
+        m_slots = new double[capacity * kSlotSize];
+    }
+
+    /**
+     * Copies the state into the next free slot. Only one thread may call this.
+     *
+     * @param state The state to copy
+     * @return true if the sample was stored, false if the ring was full and it was dropped
+     */
+    public boolean offer(SwerveDriveState state) {
+        final long head = m_head.get();
+        if (head - m_tail.get() >= m_capacity) {
+            m_dropped.incrementAndGet();
+            if (!m_overflowing) {
+                m_overflowing = true;
+                m_overflows.incrementAndGet();
+            }
+            return false;
+        }
+        m_overflowing = false;
+
+        pack(state, m_slots, (int) (head & m_mask) * kSlotSize);
+        /* Publish the slot to the consumer only after it is fully written */
+        m_head.lazySet(head + 1);
+        return true;
+    }
+
+    /**
+     * Copies the oldest sample into the given array and frees its slot.
+     * Only one thread may call this.
+     *
+     * @param slot Destination of at least {@link #kSlotSize} elements
+     * @return true if a sample was copied, false if the ring was empty
+     */
+    public boolean poll(double[] slot) {
+        final long tail = m_tail.get();
+        if (tail == m_head.get()) {
+            return false;
+        }
+        System.arraycopy(m_slots, (int) (tail & m_mask) * kSlotSize, slot, 0, kSlotSize);
+        m_tail.lazySet(tail + 1);
+        return true;
+    }
+
+    /** @return Number of samples currently waiting for the consumer */
+    public int size() {
+        return (int) (m_head.get() - m_tail.get());
+    }
+
+    /** @return Number of slots in the ring */
+    public int getCapacity() {
+        return m_capacity;
+    }
+
+    /** @return Number of times the producer found the ring full after previously having room */
+    public long getOverflowCount() {
+        return m_overflows.get();
+    }
+
+    /** @return Total number of samples dropped because the ring was full */
+    public long getDroppedCount() {
+        return m_dropped.get();
+    }
+
+    /**
+     * Flattens a swerve drive state into the slot layout described by this class.
+     *
+     * @param state  The state to flatten
+     * @param dst    Destination array
+     * @param offset Index of the first element of the slot in {@code dst}
+     */
+    public static void pack(SwerveDriveState state, double[] dst, int offset) {
+        dst[offset + kTimestamp] = state.Timestamp;
+        dst[offset + kOdometryPeriod] = state.OdometryPeriod;
+        dst[offset + kPoseX] = state.Pose.getX();
+        dst[offset + kPoseY] = state.Pose.getY();
+        dst[offset + kPoseRotation] = state.Pose.getRotation().getRadians();
+        dst[offset + kSpeedsVx] = state.Speeds.vxMetersPerSecond;
+        dst[offset + kSpeedsVy] = state.Speeds.vyMetersPerSecond;
+        dst[offset + kSpeedsOmega] = state.Speeds.omegaRadiansPerSecond;
+        dst[offset + kRawHeading] = state.RawHeading.getRadians();
+        dst[offset + kSuccessfulDaqs] = state.SuccessfulDaqs;
+        dst[offset + kFailedDaqs] = state.FailedDaqs;
+        for (int i = 0; i < kModuleCount; ++i) {
+            dst[offset + kModuleStates + i*2 + 0] = state.ModuleStates[i].angle.getRadians();
+            dst[offset + kModuleStates + i*2 + 1] = state.ModuleStates[i].speedMetersPerSecond;
+            dst[offset + kModuleTargets + i*2 + 0] = state.ModuleTargets[i].angle.getRadians();
+            dst[offset + kModuleTargets + i*2 + 1] = state.ModuleTargets[i].speedMetersPerSecond;
+            dst[offset + kModulePositions + i*2 + 0] = state.ModulePositions[i].angle.getRadians();
+            dst[offset + kModulePositions + i*2 + 1] = state.ModulePositions[i].distanceMeters;
+        }
+    }
+}
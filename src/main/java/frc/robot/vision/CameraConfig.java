@@ -0,0 +1,11 @@
+package frc.robot.vision;
+
+import edu.wpi.first.math.geometry.Transform3d;
+
+/**
+ * Static configuration of one PhotonVision camera.
+ *
+ * @param name          Camera name as configured in PhotonVision
+ * @param robotToCamera Transform from the robot center to the camera
+ */
+public record CameraConfig(String name, Transform3d robotToCamera) {}
@@ -0,0 +1,185 @@
+package frc.robot.vision;
+
+import org.photonvision.EstimatedRobotPose;
+import org.photonvision.targeting.PhotonTrackedTarget;
+
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.networktables.IntegerPublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+
+import frc.robot.Constants;
+import frc.robot.field.FieldIndex;
+import frc.robot.io.InputLog;
+import frc.robot.subsystems.CommandSwerveDrivetrain;
+import frc.robot.telemetry.PoseHistory;
+
+/**
+ * Gates vision estimates and weighs them before they reach the drivetrain's pose estimator.
+ * <p>
+ * Each estimate is checked against the field bounds and the pose the drivetrain had at the
+ * estimate's timestamp according to its {@link PoseHistory}, and rejected if either
+ * disagrees by more than the limits in {@link Constants.Vision}. Accepted estimates get
+ * standard deviations that grow with the square of the average tag distance and with pose
+ * ambiguity, and shrink with the number of tags used. Single-tag estimates never correct
+ * the heading. Counts of accepted and rejected estimates are published under
+ * {@code Vision/Fusion}.
+ * <p>
+ * Every accepted measurement is recorded under {@code Vision/Measurement}. In replay it only
+ * goes into the log: the recorded drive state already carries the fusion of the real run, and
+ * the drivetrain's own estimator is not running.
+ * <p>
+ * Estimates may arrive from several vision threads, so fusion is synchronized.
+ */
+public class VisionFusion {
+    /** Outcome of offering an estimate. */
+    public enum Verdict {
+        ACCEPTED,
+        NO_TAGS,
+        AMBIGUOUS,
+        TOO_FAR,
+        OFF_FIELD,
+        ODOMETRY_MISMATCH,
+        IMPOSSIBLE_VELOCITY
+    }
+
+    private final FieldIndex m_field;
+    private final CommandSwerveDrivetrain m_drivetrain;
+    private final PoseHistory m_poseHistory;
+    private final double[] m_historySample = new double[PoseHistory.kSampleSize];
+
+    /* Whether an estimate has been accepted, until then the fused pose may be badly seeded */
+    private boolean m_corrected = false;
+
+    /* [timestamp, x, y, theta, xy std dev, theta std dev] */
+    private final double[] m_measurement = new double[6];
+    private final InputLog m_inputLog = InputLog.getInstance();
+
+    private final long[] m_counts = new long[Verdict.values().length];
+    private final IntegerPublisher[] m_countPubs = new IntegerPublisher[Verdict.values().length];
+
+    /**
+     * Constructs a fusion stage feeding the given drivetrain.
+     *
+     * @param field      Field index used to look up tag distances and field bounds
+     * @param drivetrain Drivetrain whose pose estimator receives accepted estimates
+     */
+    public VisionFusion(FieldIndex field, CommandSwerveDrivetrain drivetrain) {
+        m_field = field;
+        m_drivetrain = drivetrain;
+        m_poseHistory = drivetrain.getPoseHistory();
+
+        final NetworkTable table = NetworkTableInstance.getDefault().getTable("Vision/Fusion");
+        for (Verdict verdict : Verdict.values()) {
+            m_countPubs[verdict.ordinal()] = table.getIntegerTopic(verdict.name()).publish();
+        }
+    }
+
+    /**
+     * Gates an estimate and, if accepted, adds it to the drivetrain's pose estimator.
+     *
+     * @param estimate Estimate from a camera's pose estimator
+     * @return Whether the estimate was accepted, or why it was rejected
+     */
+    public synchronized Verdict addMeasurement(EstimatedRobotPose estimate) {
+        final Verdict verdict = evaluate(estimate);
+        m_countPubs[verdict.ordinal()].set(++m_counts[verdict.ordinal()]);
+        return verdict;
+    }
+
+    /** @return Number of estimates that received the given verdict */
+    public synchronized long getCount(Verdict verdict) {
+        return m_counts[verdict.ordinal()];
+    }
+
+    private Verdict evaluate(EstimatedRobotPose estimate) {
+        final Pose3d pose3d = estimate.estimatedPose;
+        final Pose2d pose = pose3d.toPose2d();
+
+        /* Average distance from the estimated camera pose to each tag used, and the worst ambiguity */
+        int tagCount = 0;
+        double distanceSum = 0.0;
+        double ambiguity = 0.0;
+        for (PhotonTrackedTarget target : estimate.targetsUsed) {
+            final int id = target.getFiducialId();
+            if (!m_field.hasTag(id)) {
+                continue;
+            }
+            ++tagCount;
+            distanceSum += Math.sqrt(
+                square(m_field.getTagX(id) - pose3d.getX()) +
+                square(m_field.getTagY(id) - pose3d.getY()) +
+                square(m_field.getTagZ(id) - pose3d.getZ())
+            );
+            ambiguity = Math.max(ambiguity, target.getPoseAmbiguity());
+        }
+        if (tagCount == 0) {
+            return Verdict.NO_TAGS;
+        }
+        final double averageDistance = distanceSum / tagCount;
+
+        if (tagCount == 1 && ambiguity > Constants.Vision.kMaxAmbiguity) {
+            return Verdict.AMBIGUOUS;
+        }
+        if (averageDistance > Constants.Vision.kMaxTagDistance) {
+            return Verdict.TOO_FAR;
+        }
+
+        final double margin = Constants.Vision.kFieldMargin;
+        if (pose.getX() < -margin || pose.getX() > m_field.getFieldLength() + margin ||
+            pose.getY() < -margin || pose.getY() > m_field.getFieldWidth() + margin ||
+            Math.abs(pose3d.getZ()) > Constants.Vision.kMaxHeightError) {
+            return Verdict.OFF_FIELD;
+        }
+
+        /* Where the drivetrain's fused pose was when the frame was captured */
+        final boolean hasHistory =
+            m_poseHistory.sample(CommandSwerveDrivetrain.toPoseHistoryTime(estimate.timestampSeconds), m_historySample);
+        final double offset = hasHistory
+            ? Math.hypot(m_historySample[PoseHistory.kX] - pose.getX(), m_historySample[PoseHistory.kY] - pose.getY())
+            : 0.0;
+
+        /*
+         * A single-tag solve has to agree with where the drivetrain thought it was. Multi-tag
+         * solves skip this check so they can pull a badly seeded pose back onto the field.
+         */
+        if (tagCount == 1 && offset > Constants.Vision.kMaxOdometryError) {
+            return Verdict.ODOMETRY_MISMATCH;
+        }
+
+        /*
+         * Once vision has corrected the pose, even a multi-tag solve can't be further from it
+         * than the robot drives in the velocity window. Anchoring to the fused pose instead of
+         * the previous estimate keeps one bad estimate from locking out the good ones after it.
+         */
+        if (m_corrected && offset > Constants.Vision.kMaxImpliedSpeed * Constants.Vision.kVelocityWindow) {
+            return Verdict.IMPOSSIBLE_VELOCITY;
+        }
+
+        final double distanceScale = averageDistance * averageDistance / tagCount;
+        final double xyStdDev = Constants.Vision.kXyStdDevBase * distanceScale *
+            (1.0 + Constants.Vision.kAmbiguityScale * Math.max(0.0, ambiguity));
+        final double thetaStdDev = tagCount > 1
+            ? Constants.Vision.kThetaStdDevBase * distanceScale
+            : Constants.Vision.kSingleTagThetaStdDev;
+
+        if (!m_inputLog.isReplay()) {
+            m_drivetrain.addVisionMeasurement(pose, estimate.timestampSeconds, VecBuilder.fill(xyStdDev, xyStdDev, thetaStdDev));
+        }
+        m_measurement[0] = estimate.timestampSeconds;
+        m_measurement[1] = pose.getX();
+        m_measurement[2] = pose.getY();
+        m_measurement[3] = pose.getRotation().getRadians();
+        m_measurement[4] = xyStdDev;
+        m_measurement[5] = thetaStdDev;
+        m_inputLog.recordOutput("Vision/Measurement", m_measurement);
+        m_corrected = true;
+        return Verdict.ACCEPTED;
+    }
+
+    private static double square(double value) {
+        return value * value;
+    }
+}
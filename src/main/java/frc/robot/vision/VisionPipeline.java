@@ -0,0 +1,127 @@
+package frc.robot.vision;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import org.photonvision.EstimatedRobotPose;
+import org.photonvision.PhotonCamera;
+import org.photonvision.PhotonPoseEstimator;
+import org.photonvision.PhotonPoseEstimator.PoseStrategy;
+import org.photonvision.targeting.PhotonPipelineResult;
+
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.networktables.IntegerPublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.util.datalog.RawLogEntry;
+import edu.wpi.first.wpilibj.Notifier;
+
+import frc.robot.Constants;
+import frc.robot.io.InputLog;
+
+/**
+ * Background ingestion of one camera's PhotonVision results.
+ * <p>
+ * A {@link Notifier} drains every unread result from the camera, so no frame is lost
+ * between main loops, runs each one through the camera's own pose estimator, and hands the
+ * estimates with the camera's capture timestamp to a sink. Every camera has its own
+ * pipeline and thread, so cameras are decoded and solved in parallel. The main loop never
+ * reads NetworkTables for vision; the newest result is available through
+ * {@link #getLatestResult()}.
+ * <p>
+ * Every result is recorded into the {@link InputLog}. In replay the camera is not polled,
+ * and the recorded results are processed instead.
+ */
+public class VisionPipeline {
+    private final CameraConfig m_config;
+    private final PhotonCamera m_camera;
+    private final PhotonPoseEstimator m_estimator;
+    private final Consumer<EstimatedRobotPose> m_sink;
+    private final Notifier m_notifier;
+    private final RawLogEntry m_resultLog;
+
+    private volatile PhotonPipelineResult m_latestResult = new PhotonPipelineResult();
+
+    /* Only written by the vision thread */
+    private long m_frameCount = 0;
+    private long m_estimateCount = 0;
+
+    private final NetworkTable m_table;
+    private final IntegerPublisher m_framesPub;
+    private final IntegerPublisher m_estimatesPub;
+
+    /**
+     * Constructs the pipeline and starts its background thread.
+     *
+     * @param config Camera to read results from
+     * @param layout Field layout used by the pose estimator
+     * @param sink   Receives pose estimates, called from the vision thread
+     */
+    public VisionPipeline(CameraConfig config, AprilTagFieldLayout layout, Consumer<EstimatedRobotPose> sink) {
+        m_config = config;
+        m_camera = new PhotonCamera(config.name());
+        m_estimator = new PhotonPoseEstimator(layout, PoseStrategy.MULTI_TAG_PNP_ON_COPROCESSOR, config.robotToCamera());
+        m_sink = sink;
+
+        /* Multi-tag on the coprocessor needs a fallback for frames with a single tag */
+        m_estimator.setMultiTagFallbackStrategy(PoseStrategy.LOWEST_AMBIGUITY);
+
+        m_table = NetworkTableInstance.getDefault().getTable("Vision/" + config.name());
+        m_framesPub = m_table.getIntegerTopic("Frames").publish();
+        m_estimatesPub = m_table.getIntegerTopic("Estimates").publish();
+
+        /* In replay the recorded results come from the log instead of the camera */
+        final InputLog inputLog = InputLog.getInstance();
+        m_resultLog = inputLog.createCameraEntry(config.name());
+        inputLog.registerCamera(config.name(), this::process);
+
+        m_notifier = new Notifier(this::poll);
+        m_notifier.setName("Vision " + config.name());
+        if (!inputLog.isReplay()) {
+            m_notifier.startPeriodic(Constants.Vision.kPollPeriod);
+        }
+    }
+
+    /** @return Configuration of the camera this pipeline reads */
+    public CameraConfig getConfig() {
+        return m_config;
+    }
+
+    /** @return The camera this pipeline reads */
+    public PhotonCamera getCamera() {
+        return m_camera;
+    }
+
+    /** @return The newest result from the camera, never null */
+    public PhotonPipelineResult getLatestResult() {
+        return m_latestResult;
+    }
+
+    /** Drains and processes every result that arrived since the last poll. Runs on the vision thread. */
+    private void poll() {
+        final List<PhotonPipelineResult> results = m_camera.getAllUnreadResults();
+        if (results.isEmpty()) {
+            return;
+        }
+
+        for (PhotonPipelineResult result : results) {
+            InputLog.recordCameraResult(m_resultLog, result);
+            process(result);
+        }
+    }
+
+    /** Estimates the pose from one result. Runs on the vision thread, or the replay thread in replay. */
+    private void process(PhotonPipelineResult result) {
+        ++m_frameCount;
+        final Optional<EstimatedRobotPose> estimate = m_estimator.update(result);
+        if (estimate.isPresent()) {
+            ++m_estimateCount;
+            m_sink.accept(estimate.get());
+        }
+        m_latestResult = result;
+
+        m_framesPub.set(m_frameCount);
+        m_estimatesPub.set(m_estimateCount);
+    }
+}
@@ -0,0 +1,130 @@
+package frc.robot.vision;
+
+import java.util.Arrays;
+
+import org.photonvision.targeting.PhotonPipelineResult;
+import org.photonvision.targeting.PhotonTrackedTarget;
+
+import edu.wpi.first.math.geometry.Transform3d;
+
+/**
+ * What the cameras saw, decoded once per loop.
+ * <p>
+ * The {@link frc.robot.subsystems.Vision} subsystem refreshes the snapshot at the start of
+ * every scheduler cycle, before commands run, so every command and trigger reads the same
+ * targets without decoding results or composing transforms again. Targets are stored in
+ * arrays indexed by fiducial ID. Results older than the target timeout count as no targets,
+ * so a camera that drops out doesn't leave a stale target behind.
+ * <p>
+ * Only the main loop reads or refreshes a snapshot.
+ */
+public class VisionSnapshot {
+    private boolean m_hasTargets = false;
+    private int m_bestCamera = -1;
+    private double m_timestamp = 0.0;
+    private PhotonTrackedTarget m_bestTarget = null;
+    private Transform3d m_bestCameraToTarget = Transform3d.kZero;
+    private Transform3d m_bestRobotToTarget = Transform3d.kZero;
+
+    /* Indexed by fiducial ID, null where the tag isn't visible */
+    private final PhotonTrackedTarget[] m_targets;
+    private final Transform3d[] m_robotToTargets;
+
+    /**
+     * Constructs an empty snapshot.
+     *
+     * @param maxFiducialId Largest fiducial ID on the field
+     */
+    public VisionSnapshot(int maxFiducialId) {
+        m_targets = new PhotonTrackedTarget[maxFiducialId + 1];
+        m_robotToTargets = new Transform3d[maxFiducialId + 1];
+    }
+
+    /**
+     * Rebuilds the snapshot from the newest result of every camera.
+     *
+     * @param pipelines Camera pipelines, the first one is the primary camera
+     * @param now       Current FPGA time in seconds
+     * @param timeout   Age in seconds after which a result is ignored
+     */
+    public void update(VisionPipeline[] pipelines, double now, double timeout) {
+        m_hasTargets = false;
+        m_bestCamera = -1;
+        m_timestamp = 0.0;
+        m_bestTarget = null;
+        m_bestCameraToTarget = Transform3d.kZero;
+        m_bestRobotToTarget = Transform3d.kZero;
+        Arrays.fill(m_targets, null);
+        Arrays.fill(m_robotToTargets, null);
+
+        for (int camera = 0; camera < pipelines.length; ++camera) {
+            final PhotonPipelineResult result = pipelines[camera].getLatestResult();
+            if (!result.hasTargets() || now - result.getTimestampSeconds() > timeout) {
+                continue;
+            }
+            final Transform3d robotToCamera = pipelines[camera].getConfig().robotToCamera();
+
+            for (PhotonTrackedTarget target : result.getTargets()) {
+                final int id = target.getFiducialId();
+                if (id < 0 || id >= m_targets.length) {
+                    continue;
+                }
+                /* Keep the least ambiguous sighting when several cameras see the same tag */
+                if (m_targets[id] == null || target.getPoseAmbiguity() < m_targets[id].getPoseAmbiguity()) {
+                    m_targets[id] = target;
+                    m_robotToTargets[id] = robotToCamera.plus(target.getBestCameraToTarget());
+                }
+            }
+
+            /* The primary camera's best target wins, then the other cameras in order */
+            if (!m_hasTargets) {
+                m_hasTargets = true;
+                m_bestCamera = camera;
+                m_timestamp = result.getTimestampSeconds();
+                m_bestTarget = result.getBestTarget();
+                m_bestCameraToTarget = m_bestTarget.getBestCameraToTarget();
+                m_bestRobotToTarget = robotToCamera.plus(m_bestCameraToTarget);
+            }
+        }
+    }
+
+    /** @return Whether any camera currently sees a target */
+    public boolean hasTargets() {
+        return m_hasTargets;
+    }
+
+    /** @return Index of the camera that provided the best target, or -1 if there is none */
+    public int getBestCamera() {
+        return m_bestCamera;
+    }
+
+    /** @return Capture time of the result holding the best target in FPGA seconds */
+    public double getTimestamp() {
+        return m_timestamp;
+    }
+
+    /** @return The best target, or null if there is none */
+    public PhotonTrackedTarget getBestTarget() {
+        return m_bestTarget;
+    }
+
+    /** @return Transform from the best target's camera to the best target */
+    public Transform3d getBestCameraToTarget() {
+        return m_bestCameraToTarget;
+    }
+
+    /** @return Transform from the robot center to the best target */
+    public Transform3d getBestRobotToTarget() {
+        return m_bestRobotToTarget;
+    }
+
+    /** @return The visible target with the given fiducial ID, or null if it isn't visible */
+    public PhotonTrackedTarget getTarget(int fiducialId) {
+        return fiducialId >= 0 && fiducialId < m_targets.length ? m_targets[fiducialId] : null;
+    }
+
+    /** @return Transform from the robot center to the given tag, or null if it isn't visible */
+    public Transform3d getRobotToTarget(int fiducialId) {
+        return fiducialId >= 0 && fiducialId < m_robotToTargets.length ? m_robotToTargets[fiducialId] : null;
+    }
+}
@@ -0,0 +1,96 @@
+package frc.robot.io;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import edu.wpi.first.util.datalog.DataLogReader;
+import edu.wpi.first.util.datalog.DataLogRecord;
+import edu.wpi.first.util.datalog.DataLogWriter;
+
+import frc.robot.sim.SimHarness;
+import frc.robot.subsystems.CommandSwerveDrivetrain;
+
+/**
+ * Runs a recorded input log back through the robot code, as fast as the CPU allows.
+ * <p>
+ * The robot is constructed in a {@link SimHarness} with the {@link InputLog} in replay.
+ * Records are read in order: input groups and camera results are handed to the robot as they
+ * come, and every cycle record advances sim time to the recorded loop time and runs one loop.
+ * The recorded outputs are copied into the replay log, and the outputs the robot code
+ * computes again are written next to them under {@code Replay/Outputs/}, so the two can be
+ * diffed in AdvantageScope or any WPILog reader.
+ * <p>
+ * Run with {@code ./gradlew replayLog -Plog=<file>}, or directly with the arguments
+ * {@code <input log> [output log]}.
+ */
+public final class LogReplay {
+    private LogReplay() {}
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args[0].isEmpty()) {
+            System.err.println("Usage: LogReplay <input log> [output log]");
+            System.exit(1);
+        }
+        final String input = args[0];
+        final String output = args.length > 1 ? args[1] : input.replaceFirst("\\.wpilog$", "") + "-replay.wpilog";
+
+        final DataLogReader reader = new DataLogReader(input);
+        if (!reader.isValid()) {
+            throw new IOException("Not a WPILog: " + input);
+        }
+
+        final long start = System.nanoTime();
+        long cycles = 0;
+        try (DataLogWriter log = new DataLogWriter(output)) {
+            final InputLog inputLog = InputLog.startReplay(log);
+            CommandSwerveDrivetrain.setReplay(true);
+
+            try (SimHarness harness = new SimHarness()) {
+                final Map<Integer, String> names = new HashMap<>();
+                /* Recorded output entries, mapped to their copies in the replay log */
+                final Map<Integer, Integer> copies = new HashMap<>();
+
+                for (DataLogRecord record : reader) {
+                    if (record.isStart()) {
+                        final DataLogRecord.StartRecordData data = record.getStartData();
+                        names.put(data.entry, data.name);
+                        if (data.name.startsWith(InputLog.kOutputPrefix)) {
+                            copies.put(data.entry, log.start(data.name, data.type, data.metadata, record.getTimestamp()));
+                        }
+                        continue;
+                    }
+                    if (record.isControl()) {
+                        continue;
+                    }
+
+                    final String name = names.get(record.getEntry());
+                    if (name == null) {
+                        continue;
+                    }
+                    if (name.equals(InputLog.kCycleEntry)) {
+                        harness.advanceTo(record.getInteger() * 1e-6);
+                        harness.runLoop();
+                        ++cycles;
+                    } else if (name.startsWith(InputLog.kCameraPrefix)) {
+                        inputLog.replayCameraResult(
+                            name.substring(InputLog.kCameraPrefix.length()), record.getRaw(), record.getTimestamp()
+                        );
+                    } else if (name.startsWith(InputLog.kInputPrefix)) {
+                        inputLog.replayInputs(name.substring(InputLog.kInputPrefix.length()), record.getDoubleArray());
+                    } else {
+                        final Integer copy = copies.get(record.getEntry());
+                        if (copy != null) {
+                            log.appendDoubleArray(copy, record.getDoubleArray(), record.getTimestamp());
+                        }
+                    }
+                }
+            } finally {
+                CommandSwerveDrivetrain.setReplay(false);
+            }
+        }
+
+        System.out.printf("Replayed %d loops in %.1f s into %s%n", cycles, (System.nanoTime() - start) * 1e-9, output);
+        System.exit(0);
+    }
+}
@@ -0,0 +1,302 @@
+package frc.robot.sim;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+
+import frc.robot.Constants;
+import frc.robot.control.AlignController;
+import frc.robot.control.SwerveSetpointGenerator;
+
+/**
+ * Offline Monte-Carlo sweep of the {@link AlignController} gains.
+ * <p>
+ * Every gain set on the grid drives thousands of simulated approaches from randomized start
+ * poses and velocities, with a delayed and noisy pose measurement and a drivetrain that lags
+ * its commands after they pass through the robot's {@link SwerveSetpointGenerator}, so no
+ * gain set is credited with speeds or accelerations the modules can't deliver. Gain sets are spread over all cores, and each worker builds its own model and
+ * controller so no state is shared between runs. All gain sets see the same sequence of
+ * scenarios, so differences between them come from the gains and not from luck.
+ * <p>
+ * Gain sets are ranked by a score made of settle time, overshoot past the goal and final
+ * error, and the ranking is written as a text report. Run with
+ * {@code ./gradlew alignGainSweep}, or directly with the arguments
+ * {@code [report file] [runs per gain set] [seed]}.
+ */
+public class AlignGainSweep {
+    /* Gain grid */
+    private static final double[] kTranslationGains = range(1.0, 6.0, 0.5);
+    private static final double[] kRotationGains = range(2.0, 10.0, 1.0);
+
+    private static final int kDefaultRuns = 2000;
+    private static final long kDefaultSeed = 9991;
+    private static final String kDefaultReport = "build/align-gain-sweep.txt";
+
+    /* Simulation */
+    private static final double kStep = 0.004; // 250 Hz, same as the drivetrain simulation
+    private static final double kHorizon = 4.0; // 4 s per approach
+    private static final double kResponseTime = 0.06; // drivetrain velocity time constant
+
+    /* Randomized scenario */
+    private static final double kMinStartDistance = 0.3; // 30 cm
+    private static final double kMaxStartDistance = 3.0; // 3 m
+    private static final double kMaxStartHeadingError = Math.PI / 2;
+    private static final double kMaxStartSpeed = 1.5; // 1.5 m/s
+    private static final double kMaxStartAngularRate = 1.0; // 1 rad/s
+    private static final double kMinLatency = 0.005; // 5 ms
+    private static final double kMaxLatency = 0.040; // 40 ms
+    private static final double kPositionNoise = 0.005; // 5 mm
+    private static final double kHeadingNoise = 0.005; // ~0.3 degree
+
+    /* Score weights, in seconds per unit */
+    private static final double kOvershootWeight = 10.0; // s per m
+    private static final double kFinalErrorWeight = 50.0; // s per m
+    private static final double kUnsettledWeight = kHorizon; // s per unsettled run
+
+    /** Ranking of one gain set over all of its runs. */
+    private record Result(
+        double translationP, double rotationP,
+        double meanSettle, double p95Settle, double unsettledFraction,
+        double meanOvershoot, double maxOvershoot,
+        double meanFinalError, double meanFinalHeadingError,
+        double score
+    ) {}
+
+    /**
+     * One isolated drivetrain, measurement and controller.
+     * <p>
+     * The commanded field velocity is limited to the module speed and acceleration the real
+     * drivetrain allows, the drivetrain tracks the limited command with a first-order lag, and
+     * the controller sees the true pose from some latency ago plus Gaussian noise.
+     */
+    private static class Model {
+        private final AlignController m_controller;
+        private final SwerveSetpointGenerator m_setpointGenerator = new SwerveSetpointGenerator();
+        private final ChassisSpeeds m_desired = new ChassisSpeeds();
+        private final ChassisSpeeds m_measuredSpeeds = new ChassisSpeeds();
+        private final SplittableRandom m_random;
+
+        /* Delay line of true poses, one sample per step */
+        private final int m_delayLength = (int) Math.ceil(kMaxLatency / kStep) + 1;
+        private final double[] m_delayX = new double[m_delayLength];
+        private final double[] m_delayY = new double[m_delayLength];
+        private final double[] m_delayTheta = new double[m_delayLength];
+
+        private final double[] m_settleTimes;
+        private final double[] m_overshoots;
+        private final double[] m_finalErrors;
+        private final double[] m_finalHeadingErrors;
+        private int m_unsettled = 0;
+
+        Model(double translationP, double rotationP, long seed, int runs) {
+            m_controller = new AlignController(translationP, rotationP);
+            m_random = new SplittableRandom(seed);
+            m_settleTimes = new double[runs];
+            m_overshoots = new double[runs];
+            m_finalErrors = new double[runs];
+            m_finalHeadingErrors = new double[runs];
+        }
+
+        /** Runs one randomized approach to the origin and records its metrics. */
+        void run(int index) {
+            /* Start pose, heading and velocity */
+            final double startDistance = uniform(kMinStartDistance, kMaxStartDistance);
+            final double startDirection = uniform(-Math.PI, Math.PI);
+            final double ux = Math.cos(startDirection);
+            final double uy = Math.sin(startDirection);
+            double x = ux * startDistance;
+            double y = uy * startDistance;
+            double theta = uniform(-kMaxStartHeadingError, kMaxStartHeadingError);
+            final double startSpeed = uniform(0.0, kMaxStartSpeed);
+            final double startVelocityDirection = uniform(-Math.PI, Math.PI);
+            double vx = Math.cos(startVelocityDirection) * startSpeed;
+            double vy = Math.sin(startVelocityDirection) * startSpeed;
+            double omega = uniform(-kMaxStartAngularRate, kMaxStartAngularRate);
+            final int delay = (int) Math.round(uniform(kMinLatency, kMaxLatency) / kStep);
+
+            Arrays.fill(m_delayX, x);
+            Arrays.fill(m_delayY, y);
+            Arrays.fill(m_delayTheta, theta);
+            m_controller.reset(vx, vy, omega);
+
+            final double lag = 1.0 - Math.exp(-kStep / kResponseTime);
+            final int steps = (int) Math.round(kHorizon / kStep);
+            double lastUnsettledTime = 0.0;
+            boolean settled = false;
+            double overshoot = 0.0;
+            for (int step = 0; step < steps; ++step) {
+                /* Measure */
+                final int head = step % m_delayLength;
+                m_delayX[head] = x;
+                m_delayY[head] = y;
+                m_delayTheta[head] = theta;
+                final int measured = Math.floorMod(step - delay, m_delayLength);
+                final double measuredX = m_delayX[measured] + m_random.nextGaussian() * kPositionNoise;
+                final double measuredY = m_delayY[measured] + m_random.nextGaussian() * kPositionNoise;
+                final double measuredTheta = m_delayTheta[measured] + m_random.nextGaussian() * kHeadingNoise;
+
+                /* Control */
+                m_controller.calculate(measuredX, measuredY, measuredTheta, 0.0, 0.0, 0.0, kStep);
+
+                /* Limit the command in the robot frame, the way the drivetrain does */
+                final double cos = Math.cos(theta);
+                final double sin = Math.sin(theta);
+                m_desired.vxMetersPerSecond = m_controller.getVelocityX() * cos + m_controller.getVelocityY() * sin;
+                m_desired.vyMetersPerSecond = -m_controller.getVelocityX() * sin + m_controller.getVelocityY() * cos;
+                m_desired.omegaRadiansPerSecond = m_controller.getRotationalRate();
+                m_measuredSpeeds.vxMetersPerSecond = vx * cos + vy * sin;
+                m_measuredSpeeds.vyMetersPerSecond = -vx * sin + vy * cos;
+                m_measuredSpeeds.omegaRadiansPerSecond = omega;
+                /* Time restarts at zero every run, which makes the generator start over from the measured speeds */
+                final ChassisSpeeds limited = m_setpointGenerator.generate(m_desired, m_measuredSpeeds, step * kStep);
+                final double commandVx = limited.vxMetersPerSecond * cos - limited.vyMetersPerSecond * sin;
+                final double commandVy = limited.vxMetersPerSecond * sin + limited.vyMetersPerSecond * cos;
+
+                /* Drivetrain */
+                vx += (commandVx - vx) * lag;
+                vy += (commandVy - vy) * lag;
+                omega += (limited.omegaRadiansPerSecond - omega) * lag;
+                x += vx * kStep;
+                y += vy * kStep;
+                theta = MathUtil.angleModulus(theta + omega * kStep);
+
+                /* Score against the true pose */
+                final double time = (step + 1) * kStep;
+                settled = Math.hypot(x, y) <= Constants.Align.kTranslationTolerance &&
+                    Math.abs(theta) <= Constants.Align.kRotationTolerance;
+                if (!settled) {
+                    lastUnsettledTime = time;
+                }
+                overshoot = Math.max(overshoot, -(x * ux + y * uy));
+            }
+
+            if (!settled) {
+                ++m_unsettled;
+            }
+            m_settleTimes[index] = lastUnsettledTime;
+            m_overshoots[index] = overshoot;
+            m_finalErrors[index] = Math.hypot(x, y);
+            m_finalHeadingErrors[index] = Math.abs(theta);
+        }
+
+        /** @return The ranking over all recorded runs */
+        Result summarize(double translationP, double rotationP) {
+            final int runs = m_settleTimes.length;
+            final double meanSettle = mean(m_settleTimes);
+            final double meanOvershoot = mean(m_overshoots);
+            final double meanFinalError = mean(m_finalErrors);
+            final double unsettledFraction = (double) m_unsettled / runs;
+
+            final double[] sortedSettle = m_settleTimes.clone();
+            Arrays.sort(sortedSettle);
+            final double[] sortedOvershoot = m_overshoots.clone();
+            Arrays.sort(sortedOvershoot);
+
+            return new Result(
+                translationP, rotationP,
+                meanSettle, sortedSettle[Math.min(runs - 1, (int) (0.95 * runs))], unsettledFraction,
+                meanOvershoot, sortedOvershoot[runs - 1],
+                meanFinalError, mean(m_finalHeadingErrors),
+                meanSettle + kOvershootWeight * meanOvershoot + kFinalErrorWeight * meanFinalError +
+                    kUnsettledWeight * unsettledFraction
+            );
+        }
+
+        private double uniform(double min, double max) {
+            return min + (max - min) * m_random.nextDouble();
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        final File report = new File(args.length > 0 ? args[0] : kDefaultReport);
+        final int runs = args.length > 1 ? Integer.parseInt(args[1]) : kDefaultRuns;
+        final long seed = args.length > 2 ? Long.parseLong(args[2]) : kDefaultSeed;
+        if (runs <= 0) {
+            throw new IllegalArgumentException("Runs per gain set must be positive, got " + runs);
+        }
+
+        final int threads = Runtime.getRuntime().availableProcessors();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final List<Future<Result>> futures = new ArrayList<>();
+        final long start = System.nanoTime();
+        try {
+            for (double translationP : kTranslationGains) {
+                for (double rotationP : kRotationGains) {
+                    futures.add(executor.submit(() -> {
+                        /* The same seed for every gain set gives every gain set the same scenarios */
+                        final Model model = new Model(translationP, rotationP, seed, runs);
+                        for (int i = 0; i < runs; ++i) {
+                            model.run(i);
+                        }
+                        return model.summarize(translationP, rotationP);
+                    }));
+                }
+            }
+
+            final List<Result> results = new ArrayList<>(futures.size());
+            for (Future<Result> future : futures) {
+                results.add(future.get());
+            }
+            results.sort(Comparator.comparingDouble(Result::score));
+            final double elapsed = (System.nanoTime() - start) * 1e-9;
+
+            final File parent = report.getAbsoluteFile().getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+            try (PrintWriter out = new PrintWriter(report, "UTF-8")) {
+                out.printf("# Align gain sweep: %d gain sets x %d runs, seed %d, %d threads, %.1f s%n",
+                    results.size(), runs, seed, threads, elapsed);
+                out.printf("# Current gains: translation P %.2f, rotation P %.2f%n",
+                    Constants.Align.kTranslationP, Constants.Align.kRotationP);
+                out.printf("# Score = mean settle + %.0f * mean overshoot + %.0f * mean final error + %.0f * unsettled%n",
+                    kOvershootWeight, kFinalErrorWeight, kUnsettledWeight);
+                out.println("rank\ttranslationP\trotationP\tscore\tmeanSettle\tp95Settle\tunsettled"
+                    + "\tmeanOvershoot\tmaxOvershoot\tmeanFinalError\tmeanFinalHeadingError");
+                for (int i = 0; i < results.size(); ++i) {
+                    final Result r = results.get(i);
+                    out.printf("%d\t%.2f\t%.2f\t%.4f\t%.4f\t%.4f\t%.4f\t%.4f\t%.4f\t%.5f\t%.5f%n",
+                        i + 1, r.translationP(), r.rotationP(), r.score(), r.meanSettle(), r.p95Settle(),
+                        r.unsettledFraction(), r.meanOvershoot(), r.maxOvershoot(),
+                        r.meanFinalError(), r.meanFinalHeadingError());
+                }
+            }
+
+            final Result best = results.get(0);
+            System.out.printf("Best of %d gain sets: translation P %.2f, rotation P %.2f, mean settle %.3f s%n",
+                results.size(), best.translationP(), best.rotationP(), best.meanSettle());
+            System.out.println("Wrote report to " + report);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static double[] range(double first, double last, double step) {
+        final int count = (int) Math.round((last - first) / step) + 1;
+        final double[] values = new double[count];
+        for (int i = 0; i < count; ++i) {
+            values[i] = first + i * step;
+        }
+        return values;
+    }
+
+    private static double mean(double[] values) {
+        double sum = 0.0;
+        for (double value : values) {
+            sum += value;
+        }
+        return sum / values.length;
+    }
+}
@@ -0,0 +1,186 @@
+package frc.robot.sim;
+
+import com.ctre.phoenix6.Utils;
+
+import edu.wpi.first.hal.AllianceStationID;
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+
+import frc.robot.Robot;
+import frc.robot.RobotContainer;
+import frc.robot.subsystems.CommandSwerveDrivetrain;
+
+/**
+ * Runs the whole robot in simulation on the calling thread, as fast as the CPU allows.
+ * <p>
+ * HAL sim time is paused and only advanced by the harness. Each {@link #step()} runs one
+ * robot loop, which refreshes the Driver Station data, handles mode transitions and runs the
+ * scheduler, then advances the drivetrain simulation and sim time in sim-loop sized steps.
+ * Stepping sim time waits for every WPILib {@link edu.wpi.first.wpilibj.Notifier} that came
+ * due, so the LED and vision threads stay in lockstep too.
+ * <p>
+ * The Phoenix odometry thread still runs on its own, but after every sim step the harness
+ * blocks until it has finished an update stamped with the new sim time, so every step's
+ * request is applied to, and every loop reads, the state of the step before it. Updates the
+ * thread repeats with nothing new in between change nothing, so runs are repeatable.
+ * <p>
+ * Typical use from a JUnit test, one harness per JVM:
+ * <pre>
+ * try (SimHarness harness = new SimHarness()) {
+ *     harness.runAutonomous(15.0);
+ *     harness.runTeleop(135.0);
+ *     Pose2d pose = harness.getRobotContainer().drivetrain.getState().Pose;
+ * }
+ * </pre>
+ * Only the telemetry consumer runs freely, and it only publishes. This lives with the tests
+ * rather than in the robot jar; {@code SimHarnessTest} checks that runs are repeatable.
+ */
+public class SimHarness implements AutoCloseable {
+    /** Exposes the robot loop so the harness can run it directly. */
+    private static class SteppedRobot extends Robot {
+        void step() {
+            loopFunc();
+        }
+    }
+
+    /* Longest gap in advanceTo that is stepped through in sim-loop sized steps */
+    private static final double kMaxSteppedGap = 1.0; // 1 s
+    /* Longest wall time the odometry thread may take to catch up with a sim step */
+    private static final double kOdometryTimeout = 1.0; // 1 s
+
+    private final SteppedRobot m_robot;
+    private final double m_loopPeriod;
+    private final double m_simPeriod;
+    private final int m_simStepsPerLoop;
+    private long m_loopCount = 0;
+
+    /** Initializes the HAL with paused timing and constructs the robot, disabled on blue 1. */
+    public SimHarness() {
+        if (!HAL.initialize(500, 0)) {
+            throw new IllegalStateException("Failed to initialize the HAL");
+        }
+        SimHooks.pauseTiming();
+        SimHooks.restartTiming();
+
+        DriverStationSim.resetData();
+        DriverStationSim.setDsAttached(true);
+        DriverStationSim.setAllianceStationId(AllianceStationID.Blue1);
+        DriverStationSim.setEnabled(false);
+        DriverStationSim.notifyNewData();
+
+        CommandSwerveDrivetrain.setSteppedSimulation(true);
+        m_robot = new SteppedRobot();
+        m_loopPeriod = m_robot.getPeriod();
+        m_simPeriod = CommandSwerveDrivetrain.getSimLoopPeriod();
+        m_simStepsPerLoop = Math.max(1, (int) Math.round(m_loopPeriod / m_simPeriod));
+
+        /* Trajectories are generated on a wall-clock thread, wait so autonomous always finds them */
+        while (!m_robot.getRobotContainer().isTrajectoryGenerationDone()) {
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted waiting for trajectory generation", e);
+            }
+        }
+    }
+
+    /** @return The robot's container, to reach subsystems from a test */
+    public RobotContainer getRobotContainer() {
+        return m_robot.getRobotContainer();
+    }
+
+    /** @return Simulated time since the harness started in seconds */
+    public double getTime() {
+        return m_loopCount * m_loopPeriod;
+    }
+
+    /** Runs disabled for the given simulated time. */
+    public void runDisabled(double seconds) {
+        DriverStationSim.setEnabled(false);
+        DriverStationSim.notifyNewData();
+        run(seconds);
+    }
+
+    /** Runs autonomous for the given simulated time. */
+    public void runAutonomous(double seconds) {
+        DriverStationSim.setAutonomous(true);
+        DriverStationSim.setTest(false);
+        DriverStationSim.setEnabled(true);
+        DriverStationSim.notifyNewData();
+        run(seconds);
+    }
+
+    /** Runs teleop for the given simulated time. */
+    public void runTeleop(double seconds) {
+        DriverStationSim.setAutonomous(false);
+        DriverStationSim.setTest(false);
+        DriverStationSim.setEnabled(true);
+        DriverStationSim.notifyNewData();
+        run(seconds);
+    }
+
+    /** Runs robot loops in the current mode for the given simulated time. */
+    public void run(double seconds) {
+        final long loops = Math.round(seconds / m_loopPeriod);
+        for (long i = 0; i < loops; ++i) {
+            step();
+        }
+    }
+
+    /** Runs one robot loop, then advances the drivetrain simulation and sim time by one loop period. */
+    public void step() {
+        runLoop();
+        for (int i = 0; i < m_simStepsPerLoop; ++i) {
+            simulate(m_simPeriod);
+        }
+    }
+
+    /** Runs one robot loop without advancing sim time. */
+    public void runLoop() {
+        m_robot.step();
+        ++m_loopCount;
+    }
+
+    /**
+     * Advances sim time up to an FPGA time, for following the loop times of a recorded log.
+     * The drivetrain is not simulated, in replay its state comes from the log. Gaps longer
+     * than {@link #kMaxSteppedGap}, such as before the first recorded loop, are skipped in one
+     * step; shorter ones in sim-loop sized steps so notifiers keep their rate.
+     *
+     * @param time FPGA time in seconds, nothing happens if it is not ahead of sim time
+     */
+    public void advanceTo(double time) {
+        double remaining = time - Timer.getFPGATimestamp();
+        if (remaining > kMaxSteppedGap) {
+            SimHooks.stepTiming(remaining);
+            return;
+        }
+        while (remaining > 0) {
+            final double step = Math.min(m_simPeriod, remaining);
+            SimHooks.stepTiming(step);
+            remaining -= step;
+        }
+    }
+
+    /** Advances the drivetrain simulation and sim time, then waits for odometry to catch up. */
+    private void simulate(double dt) {
+        final CommandSwerveDrivetrain drivetrain = m_robot.getRobotContainer().drivetrain;
+        drivetrain.simulationStep(dt);
+        SimHooks.stepTiming(dt);
+        drivetrain.awaitOdometry(Utils.getCurrentTimeSeconds(), kOdometryTimeout);
+    }
+
+    @Override
+    public void close() {
+        DriverStationSim.setEnabled(false);
+        DriverStationSim.notifyNewData();
+        CommandScheduler.getInstance().cancelAll();
+        m_robot.close();
+        CommandSwerveDrivetrain.setSteppedSimulation(false);
+        SimHooks.resumeTiming();
+    }
+}
@@ -0,0 +1,82 @@
+package frc.robot.sim;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.math.geometry.Pose2d;
+
+/**
+ * Checks that a full simulated match ends in exactly the same pose every time, and that it
+ * runs well faster than real time.
+ * <p>
+ * The HAL, the command scheduler and the devices are per process, so each match runs in a
+ * fresh JVM through {@link #main(String[])}, the same way the robot program starts.
+ */
+class SimHarnessTest {
+    private static final double kAutonomousTime = 15.0; // 15 s
+    private static final double kTeleopTime = 135.0; // 2 min 15 s
+    /* Far below the 150 s of match time, so a harness that falls back to real time fails */
+    private static final long kMatchTimeout = 60; // 60 s of wall time
+    private static final String kPosePrefix = "Final pose: ";
+
+    /** Runs one match in this JVM and prints the final pose as raw bits. */
+    public static void main(String[] args) {
+        try (SimHarness harness = new SimHarness()) {
+            harness.runAutonomous(kAutonomousTime);
+            harness.runTeleop(kTeleopTime);
+            final Pose2d pose = harness.getRobotContainer().drivetrain.getState().Pose;
+            System.out.println(kPosePrefix + Long.toHexString(Double.doubleToRawLongBits(pose.getX())) + " " +
+                Long.toHexString(Double.doubleToRawLongBits(pose.getY())) + " " +
+                Long.toHexString(Double.doubleToRawLongBits(pose.getRotation().getRadians())));
+        }
+        /* Phoenix and the HAL leave non-daemon threads behind */
+        System.exit(0);
+    }
+
+    @Test
+    void matchIsRepeatable() throws IOException, InterruptedException {
+        final String first = runMatch();
+        final String second = runMatch();
+        assertEquals(first, second, "Final pose differs between identical matches");
+    }
+
+    /** @return The final pose printed by a match in a child JVM */
+    private static String runMatch() throws IOException, InterruptedException {
+        final String java = ProcessHandle.current().info().command()
+            .orElse(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        final File log = File.createTempFile("sim-match", ".log");
+        log.deleteOnExit();
+        final Process process = new ProcessBuilder(
+            java,
+            "-cp", System.getProperty("java.class.path"),
+            "-Djava.library.path=" + System.getProperty("java.library.path"),
+            SimHarnessTest.class.getName()
+        ).redirectErrorStream(true).redirectOutput(log).start();
+
+        if (!process.waitFor(kMatchTimeout, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+            fail("Match did not finish within " + kMatchTimeout + " s");
+        }
+        final List<String> output = Files.readAllLines(log.toPath(), StandardCharsets.UTF_8);
+        assertEquals(0, process.exitValue(), () -> "Match failed:\n" + String.join("\n", output));
+
+        String pose = null;
+        for (String line : output) {
+            if (line.startsWith(kPosePrefix)) {
+                pose = line.substring(kPosePrefix.length());
+            }
+        }
+        assertNotNull(pose, () -> "Match printed no pose:\n" + String.join("\n", output));
+        return pose;
+    }
+}